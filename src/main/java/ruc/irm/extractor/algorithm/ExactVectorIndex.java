@@ -0,0 +1,54 @@
+package ruc.irm.extractor.algorithm;
+
+import java.util.stream.IntStream;
+
+/**
+ * 精确的最近邻检索：把词表按照BLOCK_SIZE分块，各块在公共线程池中并行扫描，
+ * 每块使用容量为topN的最小堆保存候选结果，最后合并各块的结果。
+ * 用作近似检索的对照基准，词表较小时也可以直接使用。
+ *
+ * @author xiatian
+ */
+public class ExactVectorIndex implements VectorIndex {
+    private static final int BLOCK_SIZE = 4096;
+
+    private final VectorStore store;
+
+    public ExactVectorIndex(VectorStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public int[] search(float[] query, int topN, int[] excluded, float[] scores) {
+        //容量小于等于0的堆不限制数量，会收集并排序整个词表
+        if (topN <= 0) {
+            return new int[0];
+        }
+        int blocks = (store.words() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        ScoreHeap result;
+        if (blocks <= 1) {
+            result = scan(0, query, topN, excluded);
+        } else {
+            result = IntStream.range(0, blocks).parallel()
+                    .mapToObj(block -> scan(block, query, topN, excluded))
+                    .reduce((a, b) -> {
+                        a.addAll(b);
+                        return a;
+                    }).get();
+        }
+        return result.drainDescending(scores);
+    }
+
+    private ScoreHeap scan(int block, float[] query, int topN, int[] excluded) {
+        ScoreHeap heap = ScoreHeap.topN(topN);
+        int end = Math.min(store.words(), (block + 1) * BLOCK_SIZE);
+        for (int index = block * BLOCK_SIZE; index < end; index++) {
+            float score = store.dot(index, query);
+            if (score > heap.threshold() && !VectorIndex.contains(excluded, index)) {
+                heap.offer(index, score);
+            }
+        }
+        return heap;
+    }
+}
@@ -0,0 +1,93 @@
+package ruc.irm.extractor.algorithm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 堆内的词向量存储，所有向量按行依次保存在一个float数组中
+ *
+ * @author xiatian
+ */
+public class HeapVectorStore implements VectorStore {
+    private final String[] names;
+    private final float[] matrix;
+    private final int size;
+    private final Map<String, Integer> index;
+
+    /**
+     * @param names  词语，下标与矩阵的行号一致
+     * @param matrix 按行保存的词向量，长度为names.length * size
+     * @param size   向量维数
+     */
+    public HeapVectorStore(String[] names, float[] matrix, int size) {
+        //行号乘以维数按照int计算，需要保证不会溢出
+        if ((long) names.length * size > matrix.length) {
+            throw new IllegalArgumentException("词向量矩阵的长度" + matrix.length + "小于词语数量" + names.length
+                    + "与维数" + size + "的乘积，过大的模型请使用MappedVectorStore");
+        }
+        this.names = names;
+        this.matrix = matrix;
+        this.size = size;
+        this.index = new HashMap<>(names.length * 4 / 3 + 1);
+        for (int i = 0; i < names.length; i++) {
+            //与原来使用HashMap保存时一致，重复的词语以后出现的为准
+            index.put(names[i], i);
+        }
+    }
+
+    @Override
+    public int words() {
+        return names.length;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int indexOf(String word) {
+        Integer i = index.get(word);
+        return i == null ? -1 : i;
+    }
+
+    @Override
+    public String wordAt(int index) {
+        return names[index];
+    }
+
+    @Override
+    public float[] copyVector(int index, float[] target) {
+        System.arraycopy(matrix, index * size, target, 0, size);
+        return target;
+    }
+
+    @Override
+    public float dot(int index, float[] query) {
+        int base = index * size;
+        float sum = 0.0f;
+        for (int i = 0; i < size; i++) {
+            sum += matrix[base + i] * query[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(int index1, int index2) {
+        int base1 = index1 * size;
+        int base2 = index2 * size;
+        float sum = 0.0f;
+        for (int i = 0; i < size; i++) {
+            sum += matrix[base1 + i] * matrix[base2 + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void addTo(int index, float[] target) {
+        int base = index * size;
+        for (int i = 0; i < size; i++) {
+            target[i] += matrix[base + i];
+        }
+    }
+}
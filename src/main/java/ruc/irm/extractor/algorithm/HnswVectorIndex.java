@@ -0,0 +1,325 @@
+package ruc.irm.extractor.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 基于HNSW(Hierarchical Navigable Small World)图的近似最近邻检索，参考：
+ * Malkov Y A, Yashunin D A. Efficient and robust approximate nearest neighbor search using
+ * Hierarchical Navigable Small World graphs. IEEE TPAMI, 2018.
+ * <p>
+ * 索引在创建时对所有词向量构建一次，构建完成后只读，可以被多个线程同时检索。
+ * 由于词向量均已归一化，使用内积作为相似度。
+ *
+ * @author xiatian
+ */
+public class HnswVectorIndex implements VectorIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(HnswVectorIndex.class);
+
+    private final VectorStore store;
+
+    /**
+     * 每个节点在非底层的最大邻居数量，底层为2*m
+     */
+    private final int m;
+    private final int efConstruction;
+    private volatile int efSearch;
+
+    /**
+     * neighbors[node][level]为节点在该层的邻居，neighborCounts[node][level]为实际数量
+     */
+    private final int[][][] neighbors;
+    private final int[][] neighborCounts;
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * 每个线程复用的访问标记数组，通过递增的标记值区分不同的检索，避免每次清空
+     */
+    private final ThreadLocal<int[]> visitedMarks;
+    private final ThreadLocal<int[]> visitedStamp = ThreadLocal.withInitial(() -> new int[1]);
+
+    public HnswVectorIndex(VectorStore store) {
+        this(store, 16, 100, 64);
+    }
+
+    /**
+     * @param store
+     * @param m              每个节点的邻居数量，越大召回率越高，内存占用和构建时间也越多
+     * @param efConstruction 构建时的候选集合大小
+     * @param efSearch       检索时的候选集合大小，不小于topN
+     */
+    public HnswVectorIndex(VectorStore store, int m, int efConstruction, int efSearch) {
+        this.store = store;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+
+        int n = store.words();
+        this.neighbors = new int[n][][];
+        this.neighborCounts = new int[n][];
+        this.visitedMarks = ThreadLocal.withInitial(() -> new int[n]);
+
+        build();
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    private int maxNeighbors(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    private void build() {
+        long start = System.currentTimeMillis();
+        Random random = new Random(42);
+        double levelFactor = 1.0 / Math.log(m);
+        float[] vector = new float[store.size()];
+
+        for (int node = 0; node < store.words(); node++) {
+            int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelFactor);
+            neighbors[node] = new int[level + 1][];
+            neighborCounts[node] = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                neighbors[node][l] = new int[maxNeighbors(l)];
+            }
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                continue;
+            }
+
+            store.copyVector(node, vector);
+            int current = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                current = greedySearch(vector, current, l);
+            }
+
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                ScoreHeap candidates = searchLayer(vector, current, efConstruction, l);
+                float[] scores = new float[candidates.size()];
+                int[] sorted = candidates.drainDescending(scores);
+                current = sorted[0];
+
+                int selected = selectNeighbors(sorted, scores, sorted.length, maxNeighbors(l));
+                for (int i = 0; i < selected; i++) {
+                    link(node, sorted[i], l);
+                    link(sorted[i], node, l);
+                }
+            }
+
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+
+            if (node > 0 && node % 100000 == 0) {
+                LOG.debug("HNSW index: {} of {} words inserted.", node, store.words());
+            }
+        }
+        LOG.debug("HNSW index with {} words built in {} ms.", store.words(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 启发式的邻居选择：候选节点按照与插入节点的相似度从高到低排列，只有当候选节点与插入节点的相似度
+     * 高于其与所有已选邻居的相似度时才选择该节点，使邻居分布在不同的方向上，保持各个聚簇之间的连通性
+     *
+     * @return 选中的邻居数量，选中的邻居依次保存在sorted的前面
+     */
+    private int selectNeighbors(int[] sorted, float[] scores, int count, int limit) {
+        int selected = 0;
+        for (int i = 0; i < count && selected < limit; i++) {
+            boolean good = true;
+            for (int j = 0; j < selected; j++) {
+                if (store.dot(sorted[i], sorted[j]) > scores[i]) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good) {
+                sorted[selected] = sorted[i];
+                scores[selected] = scores[i];
+                selected++;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 在from的邻居中加入to，邻居已满时对原有邻居和to重新进行启发式选择
+     */
+    private void link(int from, int to, int level) {
+        int[] list = neighbors[from][level];
+        int count = neighborCounts[from][level];
+        for (int i = 0; i < count; i++) {
+            if (list[i] == to) {
+                return;
+            }
+        }
+        if (count < list.length) {
+            list[count] = to;
+            neighborCounts[from][level] = count + 1;
+            return;
+        }
+
+        ScoreHeap heap = ScoreHeap.topN(count + 1);
+        heap.offer(to, store.dot(from, to));
+        for (int i = 0; i < count; i++) {
+            heap.offer(list[i], store.dot(from, list[i]));
+        }
+        float[] scores = new float[count + 1];
+        int[] sorted = heap.drainDescending(scores);
+        int selected = selectNeighbors(sorted, scores, sorted.length, list.length);
+        System.arraycopy(sorted, 0, list, 0, selected);
+        neighborCounts[from][level] = selected;
+    }
+
+    private int greedySearch(float[] query, int start, int level) {
+        int current = start;
+        float currentScore = store.dot(current, query);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] list = neighbors[current][level];
+            int count = neighborCounts[current][level];
+            for (int i = 0; i < count; i++) {
+                float score = store.dot(list[i], query);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = list[i];
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在指定层上从start开始进行最佳优先搜索，返回得分最高的ef个节点(最小堆)
+     */
+    private ScoreHeap searchLayer(float[] query, int start, int ef, int level) {
+        int[] marks = visitedMarks.get();
+        int[] stamp = visitedStamp.get();
+        if (++stamp[0] == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            stamp[0] = 1;
+        }
+        int mark = stamp[0];
+
+        ScoreHeap candidates = new ScoreHeap(0, true);
+        ScoreHeap results = ScoreHeap.topN(ef);
+
+        float startScore = store.dot(start, query);
+        marks[start] = mark;
+        candidates.offer(start, startScore);
+        results.offer(start, startScore);
+
+        while (!candidates.isEmpty()) {
+            float score = candidates.peekScore();
+            if (results.isFull() && score < results.threshold()) {
+                break;
+            }
+            int node = candidates.poll();
+            int[] list = neighbors[node][level];
+            int count = neighborCounts[node][level];
+            for (int i = 0; i < count; i++) {
+                int neighbor = list[i];
+                if (marks[neighbor] == mark) {
+                    continue;
+                }
+                marks[neighbor] = mark;
+                float neighborScore = store.dot(neighbor, query);
+                if (neighborScore > results.threshold()) {
+                    candidates.offer(neighbor, neighborScore);
+                    results.offer(neighbor, neighborScore);
+                }
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public int[] search(float[] query, int topN, int[] excluded, float[] scores) {
+        if (entryPoint < 0 || topN <= 0) {
+            return new int[0];
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedySearch(query, current, l);
+        }
+
+        int extra = excluded == null ? 0 : excluded.length;
+        ScoreHeap candidates = searchLayer(query, current, Math.max(efSearch, topN + extra), 0);
+        float[] candidateScores = new float[candidates.size()];
+        int[] sorted = candidates.drainDescending(candidateScores);
+
+        int count = 0;
+        int[] result = new int[Math.min(topN, sorted.length)];
+        for (int i = 0; i < sorted.length && count < result.length; i++) {
+            if (!VectorIndex.contains(excluded, sorted[i])) {
+                if (scores != null) {
+                    scores[count] = candidateScores[i];
+                }
+                result[count++] = sorted[i];
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 比较HNSW与精确检索的召回率和速度：HnswVectorIndex [word2vec.bin] [查询数量] [efSearch...]
+     */
+    public static void main(String[] args) {
+        Word2Vec word2Vec = Word2Vec.getInstance(args.length > 0 ? args[0] : "./word2vec.bin");
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int topN = word2Vec.getTopNSize();
+
+        VectorStore store = word2Vec.getStore();
+        ExactVectorIndex exact = new ExactVectorIndex(store);
+        HnswVectorIndex hnsw = new HnswVectorIndex(store);
+        for (int e = 2; e < Math.max(3, args.length); e++) {
+            if (args.length > e) {
+                hnsw.setEfSearch(Integer.parseInt(args[e]));
+            }
+            System.out.println("efSearch=" + hnsw.efSearch);
+            compare(store, exact, hnsw, queries, topN);
+        }
+    }
+
+    private static void compare(VectorStore store, ExactVectorIndex exact, HnswVectorIndex hnsw, int queries, int topN) {
+        Random random = new Random(1);
+        float[] query = new float[store.size()];
+        long exactTime = 0, hnswTime = 0;
+        int matched = 0, total = 0;
+        for (int q = 0; q < queries; q++) {
+            int word = random.nextInt(store.words());
+            store.copyVector(word, query);
+            int[] excluded = new int[]{word};
+
+            long start = System.nanoTime();
+            int[] expected = exact.search(query, topN, excluded, null);
+            exactTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int[] actual = hnsw.search(query, topN, excluded, null);
+            hnswTime += System.nanoTime() - start;
+
+            for (int a : actual) {
+                if (VectorIndex.contains(expected, a)) {
+                    matched++;
+                }
+            }
+            total += expected.length;
+        }
+        System.out.println("recall@" + topN + ": " + matched * 1.0 / total);
+        System.out.println("exact: " + exactTime / 1000 / queries + " us/query, hnsw: "
+                + hnswTime / 1000 / queries + " us/query");
+    }
+}
@@ -0,0 +1,267 @@
+package ruc.irm.extractor.algorithm;
+
+import ruc.irm.extractor.util.ByteUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 基于内存映射文件的词向量存储。
+ * <p>
+ * 词表按照UTF-8字节序排序后连续保存，查找时在映射区域上二分查找；所有词向量按行连续保存，
+ * 计算相似度时直接读取映射区域，不在堆内为每个词语创建数组。同一台机器上的多个进程打开同一个文件时，
+ * 共享操作系统页缓存中的同一份数据，启动时也不再需要逐个读取和归一化向量。
+ * <p>
+ * 文件格式(小端序)：
+ * <pre>
+ * int magic, int version, int 词语数量n, int 向量维数size
+ * int[n+1] 每个词语在词表区的起始位置
+ * byte[]   按照UTF-8字节序排序的词表
+ * 补齐到64字节的边界
+ * float[n*size] 与词表顺序一致的归一化向量
+ * </pre>
+ *
+ * @author xiatian
+ */
+public class MappedVectorStore implements VectorStore {
+    private static final int MAGIC = 0x57325643; //"W2VC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ALIGNMENT = 64;
+
+    private final File file;
+    private final int words;
+    private final int size;
+
+    private final IntBuffer wordOffsets;
+    private final ByteBuffer vocabulary;
+
+    /**
+     * 单个映射区域不能超过2G，向量区按行分为多个映射区域，每个区域保存rowsPerChunk行
+     */
+    private final int rowsPerChunk;
+    private final FloatBuffer[] chunks;
+
+    private MappedVectorStore(File file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("不是有效的词向量文件：" + file.getAbsolutePath());
+            }
+            this.words = header.getInt();
+            this.size = header.getInt();
+
+            long offsetsBytes = 4L * (words + 1);
+            this.wordOffsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, offsetsBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            int vocabularyBytes = wordOffsets.get(words);
+            this.vocabulary = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + offsetsBytes, vocabularyBytes);
+
+            long vectorsStart = align(HEADER_BYTES + offsetsBytes + vocabularyBytes);
+            long rowBytes = 4L * size;
+            this.rowsPerChunk = (int) Math.max(1, Integer.MAX_VALUE / rowBytes);
+            int chunkCount = (words + rowsPerChunk - 1) / rowsPerChunk;
+            this.chunks = new FloatBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                int rows = Math.min(rowsPerChunk, words - c * rowsPerChunk);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        vectorsStart + c * rowsPerChunk * rowBytes, rows * rowBytes);
+                chunks[c] = buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+        }
+    }
+
+    public static MappedVectorStore open(File file) throws IOException {
+        return new MappedVectorStore(file);
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public int words() {
+        return words;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int indexOf(String word) {
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = words - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 按照无符号字节比较词表中第index个词语与key
+     */
+    private int compare(int index, byte[] key) {
+        int start = wordOffsets.get(index);
+        int length = wordOffsets.get(index + 1) - start;
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (vocabulary.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    @Override
+    public String wordAt(int index) {
+        int start = wordOffsets.get(index);
+        byte[] bytes = new byte[wordOffsets.get(index + 1) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = vocabulary.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public float[] copyVector(int index, float[] target) {
+        FloatBuffer chunk = chunks[index / rowsPerChunk];
+        int base = (index % rowsPerChunk) * size;
+        for (int i = 0; i < size; i++) {
+            target[i] = chunk.get(base + i);
+        }
+        return target;
+    }
+
+    @Override
+    public float dot(int index, float[] query) {
+        FloatBuffer chunk = chunks[index / rowsPerChunk];
+        int base = (index % rowsPerChunk) * size;
+        float sum = 0.0f;
+        for (int i = 0; i < size; i++) {
+            sum += chunk.get(base + i) * query[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(int index1, int index2) {
+        FloatBuffer chunk1 = chunks[index1 / rowsPerChunk];
+        FloatBuffer chunk2 = chunks[index2 / rowsPerChunk];
+        int base1 = (index1 % rowsPerChunk) * size;
+        int base2 = (index2 % rowsPerChunk) * size;
+        float sum = 0.0f;
+        for (int i = 0; i < size; i++) {
+            sum += chunk1.get(base1 + i) * chunk2.get(base2 + i);
+        }
+        return sum;
+    }
+
+    @Override
+    public void addTo(int index, float[] target) {
+        FloatBuffer chunk = chunks[index / rowsPerChunk];
+        int base = (index % rowsPerChunk) * size;
+        for (int i = 0; i < size; i++) {
+            target[i] += chunk.get(base + i);
+        }
+    }
+
+    /**
+     * 把已经加载的词向量保存为内存映射格式的文件
+     *
+     * @param source
+     * @param target
+     * @throws IOException
+     */
+    public static void write(VectorStore source, File target) throws IOException {
+        //去掉重复的词语，只保留indexOf能够找到的那一个
+        int[] rows = new int[source.words()];
+        byte[][] names = new byte[source.words()][];
+        int count = 0;
+        for (int i = 0; i < source.words(); i++) {
+            String word = source.wordAt(i);
+            if (source.indexOf(word) == i) {
+                names[i] = word.getBytes(StandardCharsets.UTF_8);
+                rows[count++] = i;
+            }
+        }
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = rows[i];
+        }
+        Arrays.sort(order, Comparator.comparing(i -> names[i], ByteUtil::compareBytes));
+
+        int size = source.size();
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target), 1 << 16))) {
+            ByteUtil.writeIntLE(out, MAGIC);
+            ByteUtil.writeIntLE(out, VERSION);
+            ByteUtil.writeIntLE(out, count);
+            ByteUtil.writeIntLE(out, size);
+
+            int offset = 0;
+            for (Integer row : order) {
+                ByteUtil.writeIntLE(out, offset);
+                offset += names[row].length;
+            }
+            ByteUtil.writeIntLE(out, offset);
+            for (Integer row : order) {
+                out.write(names[row]);
+            }
+
+            long position = HEADER_BYTES + 4L * (count + 1) + offset;
+            for (long i = position; i < align(position); i++) {
+                out.write(0);
+            }
+
+            float[] vector = new float[size];
+            for (Integer row : order) {
+                source.copyVector(row, vector);
+                for (float v : vector) {
+                    ByteUtil.writeIntLE(out, Float.floatToRawIntBits(v));
+                }
+            }
+        }
+    }
+
+    /**
+     * 把word2vec的二进制模型转换为内存映射格式：MappedVectorStore word2vec.bin [word2vec.bin.mmap]
+     */
+    public static void main(String[] args) throws IOException {
+        String modelPath = args.length > 0 ? args[0] : "./word2vec.bin";
+        File target = new File(args.length > 1 ? args[1] : modelPath + Word2Vec.MAPPED_SUFFIX);
+
+        Word2Vec word2Vec = new Word2Vec().loadModel(modelPath);
+        write(word2Vec.getStore(), target);
+        System.out.println("词向量保存到:" + target.getAbsolutePath());
+    }
+}
@@ -0,0 +1,232 @@
+package ruc.irm.extractor.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ruc.irm.extractor.commons.ExtractConf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 词向量模型的注册表，在后台线程中异步加载模型，并记录每个模型的加载状态和加载耗时。
+ * <p>
+ * 服务启动时调用preload开始加载；处理请求时通过getIfReady获取模型，模型尚未就绪或加载失败时返回null，
+ * 调用者可以先使用不依赖词向量的方法，避免第一个请求等待模型加载。
+ * 同一路径的模型只加载一次，加载失败后可以通过reload重新加载。
+ *
+ * @author xiatian
+ */
+public final class ModelRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(ModelRegistry.class);
+
+    public enum State {
+        LOADING, READY, FAILED
+    }
+
+    /**
+     * 模型的加载状态
+     */
+    public static final class ModelStatus {
+        private final String path;
+        private volatile State state = State.LOADING;
+        private final long startTime = System.currentTimeMillis();
+        private volatile long loadMillis = -1;
+        private volatile String error = null;
+        private volatile Word2Vec model = null;
+        private CompletableFuture<Word2Vec> future;
+
+        private ModelStatus(String path) {
+            this.path = path;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * 加载耗时(毫秒)，尚未加载完成时为-1
+         */
+        public long getLoadMillis() {
+            return loadMillis;
+        }
+
+        /**
+         * 加载失败的原因
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * 是否有可用的模型，重新加载失败时状态为FAILED，但原来的模型仍然可用
+         */
+        public boolean isServing() {
+            return model != null;
+        }
+
+        @Override
+        public String toString() {
+            return "ModelStatus{" +
+                    "path='" + path + '\'' +
+                    ", state=" + state +
+                    ", loadMillis=" + loadMillis +
+                    (error == null ? "" : ", error='" + error + '\'') +
+                    '}';
+        }
+    }
+
+    private static final Map<String, ModelStatus> models = new ConcurrentHashMap<>();
+
+    /**
+     * 模型依次在同一个后台线程中加载，避免多个大模型同时加载占满内存和磁盘带宽
+     */
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "model-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ModelRegistry() {
+
+    }
+
+    /**
+     * 在后台开始加载模型，已经在加载或加载成功的模型不会重复加载
+     *
+     * @param path 模型路径
+     * @return
+     */
+    public static CompletableFuture<Word2Vec> preload(String path) {
+        return models.computeIfAbsent(path, ModelRegistry::submit).future;
+    }
+
+    /**
+     * 重新加载模型，如加载失败后模型文件已经就绪，或者模型文件已经更新。
+     * 新模型加载完成之前，getIfReady仍然返回原来的模型；新模型加载失败时记录失败的状态和原因，
+     * 原来的模型继续使用
+     *
+     * @param path
+     * @return
+     */
+    public static CompletableFuture<Word2Vec> reload(String path) {
+        ModelStatus previous = models.get(path);
+        ModelStatus status = submit(path);
+        if (previous != null && previous.model != null) {
+            status.future.whenComplete((model, e) -> {
+                if (e != null) {
+                    status.model = previous.model;
+                }
+                models.put(path, status);
+            });
+        } else {
+            models.put(path, status);
+        }
+        return status.future;
+    }
+
+    private static ModelStatus submit(String path) {
+        ModelStatus status = new ModelStatus(path);
+        LOG.info("start loading word2vec model {}", path);
+        status.future = CompletableFuture.supplyAsync(() -> {
+            try {
+                Word2Vec model = Word2Vec.load(path);
+                status.model = model;
+                status.loadMillis = System.currentTimeMillis() - status.startTime;
+                status.state = State.READY;
+                LOG.info("word2vec model {} loaded in {} ms.", path, status.loadMillis);
+                //模型就绪后立即开始构建近邻检索索引，HNSW索引在后台构建，不会推迟第一次检索
+                model.getIndex();
+                return model;
+            } catch (Throwable e) {
+                status.loadMillis = System.currentTimeMillis() - status.startTime;
+                status.error = e.toString();
+                status.state = State.FAILED;
+                LOG.error("load word2vec model " + path + " failed.", e);
+                throw new CompletionException(e);
+            }
+        }, LOADER);
+        return status;
+    }
+
+    /**
+     * 返回已经加载完成的模型；模型尚未开始加载时开始后台加载，尚未就绪或者加载失败时返回null
+     *
+     * @param path
+     * @return
+     */
+    public static Word2Vec getIfReady(String path) {
+        ModelStatus status = models.get(path);
+        if (status == null) {
+            preload(path);
+            return null;
+        }
+        return status.model;
+    }
+
+    /**
+     * 返回模型，尚未加载完成时等待加载结束；重新加载失败时返回仍在使用的原模型
+     *
+     * @param path
+     * @return
+     * @throws IllegalStateException 模型加载失败
+     */
+    public static Word2Vec get(String path) {
+        ModelStatus status = models.get(path);
+        if (status != null && status.model != null) {
+            return status.model;
+        }
+        try {
+            return preload(path).join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("load word2vec model " + path + " failed.", e.getCause());
+        }
+    }
+
+    /**
+     * 默认模型的路径，通过extractor.word2vec.model配置
+     */
+    public static String getDefaultPath() {
+        return ExtractConf.create().get("extractor.word2vec.model", "./word2vec.bin");
+    }
+
+    /**
+     * 关键词抽取使用的默认模型。extractor.word2vec.fallback为true(默认)时不等待模型加载，
+     * 尚未就绪时返回null，由调用者改用不依赖词向量的方法；为false时等待模型加载完成
+     *
+     * @return
+     */
+    public static Word2Vec getDefault() {
+        String path = getDefaultPath();
+        if (ExtractConf.create().getBoolean("extractor.word2vec.fallback", true)) {
+            return getIfReady(path);
+        }
+        return get(path);
+    }
+
+    public static State getState(String path) {
+        ModelStatus status = models.get(path);
+        return status == null ? null : status.state;
+    }
+
+    public static ModelStatus getStatus(String path) {
+        return models.get(path);
+    }
+
+    public static List<ModelStatus> getStatuses() {
+        return new ArrayList<>(models.values());
+    }
+}
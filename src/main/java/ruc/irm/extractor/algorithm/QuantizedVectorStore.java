@@ -0,0 +1,246 @@
+package ruc.irm.extractor.algorithm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 量化后的词向量存储，用于降低词向量占用的堆内存：
+ * <ul>
+ * <li>INT8：每个分量保存为一个字节，每个向量另外保存一个缩放系数，占用约为float的1/4，
+ * 两个词语之间的相似度通过整数内积计算后再乘以两个缩放系数</li>
+ * <li>FP16：每个分量保存为半精度浮点数，占用为float的1/2，精度损失更小</li>
+ * </ul>
+ * 量化误差对关键词结果的影响可以通过QuantizationEvaluation评估。
+ *
+ * @author xiatian
+ */
+public class QuantizedVectorStore implements VectorStore {
+
+    public enum Type {
+        INT8, FP16
+    }
+
+    /**
+     * 半精度浮点数到float的转换表
+     */
+    private static final float[] HALF_TO_FLOAT = new float[1 << 16];
+
+    static {
+        for (int i = 0; i < HALF_TO_FLOAT.length; i++) {
+            HALF_TO_FLOAT[i] = halfToFloat((short) i);
+        }
+    }
+
+    private final Type type;
+    private final String[] names;
+    private final Map<String, Integer> index;
+    private final int size;
+
+    /**
+     * INT8时使用codes和scales，FP16时使用halves
+     */
+    private final byte[] codes;
+    private final float[] scales;
+    private final short[] halves;
+
+    private QuantizedVectorStore(Type type, String[] names, int size, byte[] codes, float[] scales, short[] halves) {
+        this.type = type;
+        this.names = names;
+        this.size = size;
+        this.codes = codes;
+        this.scales = scales;
+        this.halves = halves;
+        this.index = new HashMap<>(names.length * 4 / 3 + 1);
+        for (int i = 0; i < names.length; i++) {
+            index.put(names[i], i);
+        }
+    }
+
+    /**
+     * 对已经加载的词向量进行量化
+     *
+     * @param source
+     * @param type
+     * @return
+     */
+    public static QuantizedVectorStore quantize(VectorStore source, Type type) {
+        int words = source.words();
+        int size = source.size();
+        //量化后的向量保存在一个数组中，行号乘以维数按照int计算，需要保证不会溢出
+        if ((long) words * size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("词语数量" + words + "与维数" + size
+                    + "的乘积超出数组的最大长度，无法量化，请直接使用MappedVectorStore");
+        }
+        String[] names = new String[words];
+        float[] vector = new float[size];
+
+        if (type == Type.INT8) {
+            byte[] codes = new byte[words * size];
+            float[] scales = new float[words];
+            for (int i = 0; i < words; i++) {
+                names[i] = source.wordAt(i);
+                source.copyVector(i, vector);
+                float max = 0.0f;
+                for (float v : vector) {
+                    max = Math.max(max, Math.abs(v));
+                }
+                float scale = max > 0 ? max / 127.0f : 1.0f;
+                scales[i] = scale;
+                int base = i * size;
+                for (int j = 0; j < size; j++) {
+                    codes[base + j] = (byte) Math.round(vector[j] / scale);
+                }
+            }
+            return new QuantizedVectorStore(type, names, size, codes, scales, null);
+        } else {
+            short[] halves = new short[words * size];
+            for (int i = 0; i < words; i++) {
+                names[i] = source.wordAt(i);
+                source.copyVector(i, vector);
+                int base = i * size;
+                for (int j = 0; j < size; j++) {
+                    halves[base + j] = floatToHalf(vector[j]);
+                }
+            }
+            return new QuantizedVectorStore(type, names, size, null, null, halves);
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * 词向量部分占用的字节数
+     */
+    public long vectorBytes() {
+        return type == Type.INT8 ? codes.length + 4L * scales.length : 2L * halves.length;
+    }
+
+    @Override
+    public int words() {
+        return names.length;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int indexOf(String word) {
+        Integer i = index.get(word);
+        return i == null ? -1 : i;
+    }
+
+    @Override
+    public String wordAt(int index) {
+        return names[index];
+    }
+
+    @Override
+    public float[] copyVector(int index, float[] target) {
+        int base = index * size;
+        if (type == Type.INT8) {
+            float scale = scales[index];
+            for (int i = 0; i < size; i++) {
+                target[i] = codes[base + i] * scale;
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                target[i] = HALF_TO_FLOAT[halves[base + i] & 0xffff];
+            }
+        }
+        return target;
+    }
+
+    @Override
+    public float dot(int index, float[] query) {
+        int base = index * size;
+        float sum = 0.0f;
+        if (type == Type.INT8) {
+            for (int i = 0; i < size; i++) {
+                sum += codes[base + i] * query[i];
+            }
+            return sum * scales[index];
+        } else {
+            for (int i = 0; i < size; i++) {
+                sum += HALF_TO_FLOAT[halves[base + i] & 0xffff] * query[i];
+            }
+            return sum;
+        }
+    }
+
+    @Override
+    public float dot(int index1, int index2) {
+        int base1 = index1 * size;
+        int base2 = index2 * size;
+        if (type == Type.INT8) {
+            //127*127*size不会超出int的范围
+            int sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += codes[base1 + i] * codes[base2 + i];
+            }
+            return sum * scales[index1] * scales[index2];
+        } else {
+            float sum = 0.0f;
+            for (int i = 0; i < size; i++) {
+                sum += HALF_TO_FLOAT[halves[base1 + i] & 0xffff] * HALF_TO_FLOAT[halves[base2 + i] & 0xffff];
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * float转换为半精度浮点数，舍入方式为就近舍入
+     */
+    static short floatToHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+
+        if (exponent >= 31) {
+            //溢出或NaN
+            boolean nan = ((bits >>> 23) & 0xff) == 0xff && mantissa != 0;
+            return (short) (sign | 0x7c00 | (nan ? 0x200 : 0));
+        } else if (exponent <= 0) {
+            //非规格化数或下溢为0
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            int rest = mantissa & ((1 << shift) - 1);
+            int middle = 1 << (shift - 1);
+            if (rest > middle || (rest == middle && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        } else {
+            int half = (exponent << 10) | (mantissa >> 13);
+            int rest = mantissa & 0x1fff;
+            if (rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) {
+                half++; //进位可能使指数加1，结果仍然正确
+            }
+            return (short) (sign | half);
+        }
+    }
+
+    static float halfToFloat(short half) {
+        int h = half & 0xffff;
+        int sign = (h & 0x8000) << 16;
+        int exponent = (h >>> 10) & 0x1f;
+        int mantissa = h & 0x3ff;
+
+        if (exponent == 0) {
+            //非规格化数
+            float value = mantissa * (1.0f / (1 << 24));
+            return sign == 0 ? value : -value;
+        } else if (exponent == 31) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,167 @@
+package ruc.irm.extractor.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * 保存(词语下标, 得分)的二叉堆，不为每个元素创建对象。
+ * <p>
+ * 最小堆的堆顶为得分最低的元素，指定容量后可作为TopN集合使用：堆满时只有得分高于堆顶的元素才会替换堆顶；
+ * 最大堆用于HNSW搜索时按照得分从高到低扩展候选节点。
+ *
+ * @author xiatian
+ */
+final class ScoreHeap {
+    private final boolean maxHeap;
+    private final int capacity;
+    private int[] ids;
+    private float[] scores;
+    private int size = 0;
+
+    /**
+     * @param capacity 最多保存的元素数量，小于等于0时不限制
+     * @param maxHeap  是否为最大堆
+     */
+    ScoreHeap(int capacity, boolean maxHeap) {
+        this.capacity = capacity;
+        this.maxHeap = maxHeap;
+        int initial = capacity > 0 ? capacity : 16;
+        this.ids = new int[initial];
+        this.scores = new float[initial];
+    }
+
+    /**
+     * 创建保存得分最高的topN个元素的集合
+     */
+    static ScoreHeap topN(int topN) {
+        return new ScoreHeap(topN, false);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int peekId() {
+        return ids[0];
+    }
+
+    float peekScore() {
+        return scores[0];
+    }
+
+    boolean isFull() {
+        return capacity > 0 && size >= capacity;
+    }
+
+    /**
+     * 最小堆已满时，得分不高于该值的元素不会被加入
+     */
+    float threshold() {
+        return isFull() ? scores[0] : Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * 加入一个元素，返回是否加入成功
+     */
+    boolean offer(int id, float score) {
+        if (isFull()) {
+            if (maxHeap || score <= scores[0]) {
+                return false;
+            }
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(0);
+            return true;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        ids[size] = id;
+        scores[size] = score;
+        siftUp(size++);
+        return true;
+    }
+
+    /**
+     * 删除堆顶元素，返回其下标
+     */
+    int poll() {
+        int id = ids[0];
+        size--;
+        if (size > 0) {
+            ids[0] = ids[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        return id;
+    }
+
+    void addAll(ScoreHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * 按照得分从高到低返回所有元素的下标，并把对应的得分写入sortedScores(可以为null)。调用后堆被清空
+     */
+    int[] drainDescending(float[] sortedScores) {
+        int n = size;
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            float score = scores[0];
+            int position = maxHeap ? i : n - 1 - i;
+            if (sortedScores != null) {
+                sortedScores[position] = score;
+            }
+            result[position] = poll();
+        }
+        return result;
+    }
+
+    private boolean before(int a, int b) {
+        return maxHeap ? scores[a] > scores[b] : scores[a] < scores[b];
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(i, parent)) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                break;
+            }
+            int child = left;
+            if (left + 1 < size && before(left + 1, left)) {
+                child = left + 1;
+            }
+            if (!before(child, i)) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,32 @@
+package ruc.irm.extractor.algorithm;
+
+/**
+ * 词向量的最近邻检索，Word2Vec的distance和analogy通过该接口查找相似词语，
+ * 目前有精确检索ExactVectorIndex和近似检索HnswVectorIndex两种实现
+ *
+ * @author xiatian
+ */
+public interface VectorIndex {
+
+    /**
+     * 查找与query内积最大的topN个词语
+     *
+     * @param query    查询向量
+     * @param topN     返回的词语数量，小于等于0时返回空数组
+     * @param excluded 需要排除的词语下标，如查询词本身
+     * @param scores   用于保存对应的得分，按照从高到低排列，长度不小于返回的数量，可以为null
+     * @return 按照得分从高到低排列的词语下标
+     */
+    int[] search(float[] query, int topN, int[] excluded, float[] scores);
+
+    static boolean contains(int[] indexes, int index) {
+        if (indexes != null) {
+            for (int i : indexes) {
+                if (i == index) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+package ruc.irm.extractor.algorithm;
+
+/**
+ * 词向量的存储方式，词语按照下标访问，所有向量均已经归一化，
+ * 目前有堆内的连续数组HeapVectorStore和内存映射文件MappedVectorStore两种实现
+ *
+ * @author xiatian
+ */
+public interface VectorStore {
+
+    /**
+     * 词语数量
+     */
+    int words();
+
+    /**
+     * 向量维数
+     */
+    int size();
+
+    /**
+     * 词语的下标，不存在时返回-1
+     *
+     * @param word
+     * @return
+     */
+    int indexOf(String word);
+
+    String wordAt(int index);
+
+    /**
+     * 把下标为index的词向量复制到target中，并返回target
+     *
+     * @param index
+     * @param target 长度为size()的数组
+     * @return
+     */
+    float[] copyVector(int index, float[] target);
+
+    /**
+     * 下标为index的词向量与query的内积
+     */
+    float dot(int index, float[] query);
+
+    /**
+     * 两个词向量的内积，即余弦相似度
+     */
+    float dot(int index1, int index2);
+
+    /**
+     * 把下标为index的词向量累加到target中
+     */
+    default void addTo(int index, float[] target) {
+        float[] vector = copyVector(index, new float[size()]);
+        for (int i = 0; i < target.length; i++) {
+            target[i] += vector[i];
+        }
+    }
+}
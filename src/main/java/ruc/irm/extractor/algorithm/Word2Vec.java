@@ -1,8 +1,20 @@
 package ruc.irm.extractor.algorithm;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ruc.irm.extractor.commons.ExtractConf;
+import ruc.irm.extractor.util.MathUtil;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Load word2vec model(trained by c implementation version), and do analysis in Java.
@@ -12,33 +24,111 @@ import java.util.Map.Entry;
  * @see <a href="http://blog.csdn.net/zhoubl668/article/details/24314769">http://blog.csdn.net/zhoubl668/article/details/24314769</a>
  */
 public class Word2Vec {
-    private HashMap<String, float[]> wordMap = new HashMap<String, float[]>();
+    private static final Logger LOG = LoggerFactory.getLogger(Word2Vec.class);
+
+    /**
+     * 内存映射格式的词向量文件后缀，存在modelPath + MAPPED_SUFFIX文件时直接映射该文件，
+     * 该文件通过MappedVectorStore.main生成
+     */
+    public static final String MAPPED_SUFFIX = ".mmap";
+
+    private VectorStore store = null;
 
     private String modelPath;
     private int words;
     private int size;
     private int topNSize = 40;
-    private static Map<String, Word2Vec> instances = new HashMap<>();
+    private String searchMethod = "exact";
+    private volatile VectorIndex index = null;
+
+    private static final ExecutorService INDEX_BUILDER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "vector-index-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    private Word2Vec() {
+    public Word2Vec() {
 
     }
 
+    /**
+     * 得到共享的模型实例，模型尚未加载时在当前线程中等待ModelRegistry加载完成
+     *
+     * @param modelPath
+     * @return
+     * @throws IllegalStateException 模型加载失败
+     */
     public static Word2Vec getInstance(String modelPath) {
-        if (!instances.containsKey(modelPath)) {
-            Word2Vec word2Vec = new Word2Vec();
-            try {
-                word2Vec.loadModel(modelPath);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            instances.put(modelPath, word2Vec);
+        return ModelRegistry.get(modelPath);
+    }
+
+    /**
+     * 按照配置加载模型：存在modelPath + MAPPED_SUFFIX文件时直接映射该文件，
+     * 并根据extractor.word2vec.quantization和extractor.word2vec.search设置量化和检索方式
+     *
+     * @param modelPath
+     * @return
+     * @throws IOException
+     */
+    public static Word2Vec load(String modelPath) throws IOException {
+        Word2Vec word2Vec = new Word2Vec();
+        File mappedFile = new File(modelPath + MAPPED_SUFFIX);
+        if (mappedFile.exists()) {
+            word2Vec.mapModel(mappedFile);
+        } else {
+            word2Vec.loadModel(modelPath);
+        }
+
+        //通过extractor.word2vec.quantization配置量化方式：none, int8, fp16
+        String quantization = ExtractConf.create().get("extractor.word2vec.quantization", "none");
+        if (!"none".equalsIgnoreCase(quantization)) {
+            word2Vec.store = QuantizedVectorStore.quantize(word2Vec.store,
+                    QuantizedVectorStore.Type.valueOf(quantization.toUpperCase()));
         }
-        return instances.get(modelPath);
+
+        //近义词检索方式：exact为并行的精确检索，hnsw为近似检索
+        word2Vec.searchMethod = ExtractConf.create().get("extractor.word2vec.search", "exact");
+        return word2Vec;
+    }
+
+    /**
+     * 通过内存映射打开MappedVectorStore格式的词向量文件
+     */
+    public Word2Vec mapModel(File mappedFile) throws IOException {
+        this.modelPath = mappedFile.getPath();
+        this.store = MappedVectorStore.open(mappedFile);
+        this.words = store.words();
+        this.size = store.size();
+        return this;
+    }
+
+    /**
+     * 生成使用量化存储的模型副本，原模型不受影响
+     *
+     * @param type
+     * @return
+     */
+    public Word2Vec quantize(QuantizedVectorStore.Type type) {
+        Word2Vec word2Vec = new Word2Vec();
+        word2Vec.modelPath = modelPath;
+        word2Vec.store = QuantizedVectorStore.quantize(store, type);
+        word2Vec.words = words;
+        word2Vec.size = size;
+        word2Vec.topNSize = topNSize;
+        word2Vec.searchMethod = searchMethod;
+        return word2Vec;
     }
 
+    /**
+     * 读取模型时的缓冲区大小
+     */
+    private static final int LOAD_BUFFER_SIZE = 16 << 20;
+
     /**
      * Load trained model
+     * <p>
+     * 通过FileChannel按块读入直接缓冲区，词语在缓冲区中定位后一次解码，向量按照小端序批量读取，
+     * 读取的同时计算向量长度，每个向量只遍历两次(读取和归一化)且都在缓存中完成
      */
     public Word2Vec loadModel(String path) throws IOException {
         this.modelPath = path;
@@ -48,48 +138,115 @@ public class Word2Vec {
             throw new IOException("不存在模型文件：" + modelFile.getCanonicalPath());
         }
 
-        DataInputStream dis = null;
-        BufferedInputStream bis = null;
-        double len = 0;
-        float vector = 0;
-        try {
-            System.out.print("Loading " + path + "...");
-            bis = new BufferedInputStream(new FileInputStream(path));
-            dis = new DataInputStream(bis);
+        long start = System.currentTimeMillis();
+        System.out.print("Loading " + path + "...");
+        try (FileChannel channel = FileChannel.open(modelFile.toPath(), StandardOpenOption.READ)) {
+            ModelReader reader = new ModelReader(channel);
             //读取词数
-            words = Integer.parseInt(readString(dis));
+            words = Integer.parseInt(reader.readToken());
             //大小
-            size = Integer.parseInt(readString(dis));
+            size = Integer.parseInt(reader.readToken());
+            if ((long) words * size > Integer.MAX_VALUE - 8) {
+                throw new IOException("模型过大，请使用MappedVectorStore转换为内存映射格式：" + path);
+            }
 
-            String word;
-            float[] vectors = null;
+            //所有词向量按行保存在一个连续的数组中
+            String[] names = new String[words];
+            float[] matrix = new float[words * size];
             for (int i = 0; i < words; i++) {
-                word = readString(dis);
-                vectors = new float[size];
-                len = 0;
-                for (int j = 0; j < size; j++) {
-                    vector = readFloat(dis);
-                    len += vector * vector;
-                    vectors[j] = (float) vector;
+                names[i] = reader.readToken();
+                int base = i * size;
+                reader.readFloats(matrix, base, size);
+
+                double len = 0;
+                for (int j = base; j < base + size; j++) {
+                    len += matrix[j] * matrix[j];
                 }
                 len = Math.sqrt(len);
-
-                for (int j = 0; j < vectors.length; j++) {
-                    vectors[j] = (float) (vectors[j] / len);
+                for (int j = base; j < base + size; j++) {
+                    matrix[j] = (float) (matrix[j] / len);
                 }
-                wordMap.put(word, vectors);
-                dis.read();
             }
-            System.out.println("Done.");
-        } finally {
-            bis.close();
-            dis.close();
+            store = new HeapVectorStore(names, matrix, size);
         }
+        System.out.println("Done in " + (System.currentTimeMillis() - start) + " ms.");
 
         return this;
     }
 
-    private static final int MAX_SIZE = 50;
+    /**
+     * 按块读取word2vec二进制模型：文件头为"词数 维数\n"，之后每个词语为"词语 "加上维数个小端序float，
+     * 向量后面通常还有一个换行符
+     */
+    private static final class ModelReader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(LOAD_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private byte[] token = new byte[256];
+        private boolean eof = false;
+
+        ModelReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        /**
+         * 保证缓冲区中至少有n个字节，文件剩余内容不足时读入全部剩余内容
+         */
+        private void ensure(int n) throws IOException {
+            if (buffer.remaining() >= n || eof) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < n && buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    eof = true;
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+
+        /**
+         * 读取以空格或换行结束的字符串，跳过前面的空白
+         */
+        String readToken() throws IOException {
+            ensure(1);
+            while (buffer.hasRemaining() && (buffer.get(buffer.position()) == ' ' || buffer.get(buffer.position()) == '\n')) {
+                buffer.get();
+                ensure(1);
+            }
+
+            int length = 0;
+            while (true) {
+                ensure(1);
+                if (!buffer.hasRemaining()) {
+                    break;
+                }
+                byte b = buffer.get();
+                if (b == ' ' || b == '\n') {
+                    break;
+                }
+                if (length == token.length) {
+                    token = Arrays.copyOf(token, length * 2);
+                }
+                token[length++] = b;
+            }
+            if (length == 0) {
+                throw new EOFException("unexpected end of word2vec model.");
+            }
+            return new String(token, 0, length, StandardCharsets.UTF_8);
+        }
+
+        void readFloats(float[] target, int offset, int count) throws IOException {
+            ensure(count * 4);
+            if (buffer.remaining() < count * 4) {
+                throw new EOFException("unexpected end of word2vec model.");
+            }
+            FloatBuffer floats = buffer.asFloatBuffer();
+            floats.get(target, offset, count);
+            buffer.position(buffer.position() + count * 4);
+        }
+    }
 
 
     public Set<WordEntry> distance(String words) {
@@ -98,12 +255,12 @@ public class Word2Vec {
     }
 
     public float similarity(String word1, String word2) {
-        float[] v1 = getWordVector(word1);
-        float[] v2 = getWordVector(word2);
-        if (v1 == null || v2 == null) {
+        int index1 = store.indexOf(word1);
+        int index2 = store.indexOf(word2);
+        if (index1 < 0 || index2 < 0) {
             return 0;
         } else {
-            return similarity(v1, v2);
+            return store.dot(index1, index2);
         }
     }
 
@@ -127,23 +284,11 @@ public class Word2Vec {
         if (wordVector == null) {
             return null;
         }
-        Set<Entry<String, float[]>> entrySet = wordMap.entrySet();
-        float[] tempVector = null;
-        List<WordEntry> wordEntrys = new ArrayList<WordEntry>(topNSize);
-        String name = null;
-        for (Entry<String, float[]> entry : entrySet) {
-            name = entry.getKey();
-            if (words.contains(name)) {
-                continue;
-            }
-            float dist = 0;
-            tempVector = entry.getValue();
-            for (int i = 0; i < wordVector.length; i++) {
-                dist += wordVector[i] * tempVector[i];
-            }
-            insertTopN(name, dist, wordEntrys);
+        int[] excluded = new int[words.size()];
+        for (int i = 0; i < excluded.length; i++) {
+            excluded[i] = store.indexOf(words.get(i));
         }
-        return new TreeSet<WordEntry>(wordEntrys);
+        return nearest(wordVector, excluded);
     }
 
     /**
@@ -152,54 +297,83 @@ public class Word2Vec {
      * @return
      */
     public TreeSet<WordEntry> analogy(String word0, String word1, String word2) {
-        float[] wv0 = getWordVector(word0);
-        float[] wv1 = getWordVector(word1);
-        float[] wv2 = getWordVector(word2);
-
-        if (wv1 == null || wv2 == null || wv0 == null) {
+        int[] excluded = new int[]{store.indexOf(word0), store.indexOf(word1), store.indexOf(word2)};
+        if (VectorIndex.contains(excluded, -1)) {
             return null;
         }
+        float[] wv0 = store.copyVector(excluded[0], new float[size]);
+        float[] wv1 = store.copyVector(excluded[1], new float[size]);
+        float[] wv2 = store.copyVector(excluded[2], new float[size]);
+
         float[] wordVector = new float[size];
         for (int i = 0; i < size; i++) {
             wordVector[i] = wv1[i] - wv0[i] + wv2[i];
         }
-        float[] tempVector;
-        String name;
-        List<WordEntry> wordEntrys = new ArrayList<WordEntry>(topNSize);
-        for (Entry<String, float[]> entry : wordMap.entrySet()) {
-            name = entry.getKey();
-            if (name.equals(word0) || name.equals(word1) || name.equals(word2)) {
-                continue;
-            }
-            float dist = 0;
-            tempVector = entry.getValue();
-            for (int i = 0; i < wordVector.length; i++) {
-                dist += wordVector[i] * tempVector[i];
-            }
-            insertTopN(name, dist, wordEntrys);
-        }
-        return new TreeSet<WordEntry>(wordEntrys);
+        return nearest(wordVector, excluded);
     }
 
-    private void insertTopN(String name, float score, final List<WordEntry> wordEntries) {
-        if (wordEntries.size() < topNSize) {
-            wordEntries.add(new WordEntry(name, score));
-            return;
+    private TreeSet<WordEntry> nearest(float[] query, int[] excluded) {
+        float[] scores = new float[topNSize];
+        int[] indexes = getIndex().search(query, topNSize, excluded, scores);
+
+        TreeSet<WordEntry> wordEntrys = new TreeSet<WordEntry>();
+        for (int i = 0; i < indexes.length; i++) {
+            wordEntrys.add(new WordEntry(store.wordAt(indexes[i]), scores[i]));
         }
-        float min = Float.MAX_VALUE;
-        int minOffe = 0;
-        for (int i = 0; i < topNSize; i++) {
-            WordEntry wordEntry = wordEntries.get(i);
-            if (min > wordEntry.score) {
-                min = wordEntry.score;
-                minOffe = i;
+        return wordEntrys;
+    }
+
+    /**
+     * 最近邻检索使用的索引，默认为精确检索。searchMethod为hnsw时，在后台线程中构建HNSW索引，
+     * 构建完成之前使用精确检索，检索请求不需要等待索引构建
+     */
+    public VectorIndex getIndex() {
+        VectorIndex result = index;
+        if (result == null) {
+            synchronized (this) {
+                result = index;
+                if (result == null) {
+                    result = new ExactVectorIndex(store);
+                    index = result;
+                    if ("hnsw".equalsIgnoreCase(searchMethod)) {
+                        buildHnswIndex(result);
+                    }
+                }
             }
         }
+        return result;
+    }
 
-        if (score > min) {
-            wordEntries.set(minOffe, new WordEntry(name, score));
-        }
+    /**
+     * HNSW索引在同一个后台线程中依次构建，构建期间检索使用exact；
+     * 构建完成时如果检索方式已经改变(exact索引已被替换)，则丢弃构建结果
+     */
+    private void buildHnswIndex(VectorIndex exact) {
+        INDEX_BUILDER.execute(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                HnswVectorIndex hnsw = new HnswVectorIndex(store);
+                synchronized (this) {
+                    if (index == exact) {
+                        index = hnsw;
+                    }
+                }
+                LOG.info("HNSW index of {} with {} words built in {} ms.", modelPath, words,
+                        System.currentTimeMillis() - start);
+            } catch (Throwable e) {
+                LOG.error("build HNSW index of " + modelPath + " failed, use exact search.", e);
+            }
+        });
+    }
 
+    /**
+     * 设置最近邻检索的方式：exact或hnsw
+     *
+     * @param searchMethod
+     */
+    public synchronized void setSearchMethod(String searchMethod) {
+        this.searchMethod = searchMethod;
+        this.index = null;
     }
 
     public static class WordEntry implements Comparable<WordEntry> {
@@ -227,12 +401,63 @@ public class Word2Vec {
 
     }
 
+    /**
+     * 返回词向量的副本，词语不存在时返回null
+     *
+     * @param word
+     * @return
+     */
     public float[] getWordVector(String word) {
-        return wordMap.get(word);
+        int index = store.indexOf(word);
+        return index < 0 ? null : store.copyVector(index, new float[size]);
+    }
+
+    /**
+     * 把一组词语的词向量按行复制到一个连续的数组中，不存在的词语对应全0的向量，
+     * 与similarity对不存在的词语返回0保持一致
+     *
+     * @param words
+     * @return 长度为words.length * size的数组
+     */
+    public float[] gatherVectors(String[] words) {
+        int[] indexes = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            indexes[i] = store.indexOf(words[i]);
+        }
+        return gatherVectors(indexes);
+    }
+
+    /**
+     * 按照词语在模型中的下标复制词向量，下标小于0时对应全0的向量
+     *
+     * @param indexes
+     * @return 长度为indexes.length * size的数组
+     */
+    public float[] gatherVectors(int[] indexes) {
+        float[] matrix = new float[indexes.length * size];
+        float[] vector = new float[size];
+        for (int i = 0; i < indexes.length; i++) {
+            int index = indexes[i];
+            if (index >= 0) {
+                store.copyVector(index, vector);
+                System.arraycopy(vector, 0, matrix, i * size, size);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * 一组词语两两之间的相似度，结果按行保存在长度为words.length * words.length的数组中
+     *
+     * @param words
+     * @return
+     */
+    public float[] similarityMatrix(String[] words) {
+        return MathUtil.gram(gatherVectors(words), words.length, size);
     }
 
     public boolean containsWord(String word) {
-        return wordMap.containsKey(word);
+        return store.indexOf(word) >= 0;
     }
 
     public float[] vectorPlus(float[] v1, float[] v2, boolean newSpaceCopy) {
@@ -280,12 +505,10 @@ public class Word2Vec {
         float[] vector = new float[size];
         int count = 0;
         for (String w : words) {
-            if (!wordMap.containsKey(w)) continue;
+            int index = store.indexOf(w);
+            if (index < 0) continue;
 
-            float[] tmpVector = wordMap.get(w);
-            for (int i = 0; i < vector.length; i++) {
-                vector[i] += tmpVector[i];
-            }
+            store.addTo(index, vector);
             count++;
         }
 
@@ -324,28 +547,6 @@ public class Word2Vec {
         return Float.intBitsToFloat(accum);
     }
 
-    /**
-     * 读取一个字符串, 一定注意编码问题，否则在windows命令行上会存在问题
-     */
-    private static String readString(DataInputStream dis) throws IOException {
-        byte[] bytes = new byte[MAX_SIZE];
-        byte b = dis.readByte();
-        int i = -1;
-        StringBuilder sb = new StringBuilder();
-        while (b != 32 && b != 10) {
-            i++;
-            bytes[i] = b;
-            b = dis.readByte();
-            if (i == 49) {
-                sb.append(new String(bytes, "utf-8"));
-                i = -1;
-                bytes = new byte[MAX_SIZE];
-            }
-        }
-        sb.append(new String(bytes, 0, i + 1, "utf-8"));
-        return sb.toString();
-    }
-
     public int getTopNSize() {
         return topNSize;
     }
@@ -354,7 +555,19 @@ public class Word2Vec {
         this.topNSize = topNSize;
     }
 
+    public VectorStore getStore() {
+        return store;
+    }
+
+    /**
+     * 复制生成词语到词向量的映射，模型较大时占用大量内存，应优先使用getStore
+     */
+    @Deprecated
     public HashMap<String, float[]> getWordMap() {
+        HashMap<String, float[]> wordMap = new HashMap<String, float[]>();
+        for (int i = 0; i < store.words(); i++) {
+            wordMap.put(store.wordAt(i), store.copyVector(i, new float[size]));
+        }
         return wordMap;
     }
 
@@ -0,0 +1,434 @@
+package ruc.irm.extractor.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zhinang.conf.Configuration;
+import ruc.irm.extractor.commons.ExtractConf;
+import ruc.irm.extractor.nlp.SegWord;
+import ruc.irm.extractor.nlp.Segment;
+import ruc.irm.extractor.nlp.SegmentFactory;
+import ruc.irm.extractor.util.DocumentPipeline;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 训练word2vec词向量，使用负采样的Skip-gram或CBOW模型，参考：
+ * Mikolov T, et al. Distributed Representations of Words and Phrases and their Compositionality. NIPS, 2013.
+ * <p>
+ * 训练分为两个阶段：第一遍读取语料时，多个线程并行分词并统计词频，同时把分词结果写入临时文件；
+ * 之后每轮训练直接读取临时文件，各线程以Hogwild方式(不加锁)同时更新共享的向量数组。
+ * 训练结果保存为Word2Vec.loadModel读取的二进制格式。支持如下参数：
+ * <ul>
+ *     <li>extractor.word2vec.train.model: skip-gram(默认)或cbow</li>
+ *     <li>extractor.word2vec.train.size: 向量维数，默认为100</li>
+ *     <li>extractor.word2vec.train.window: 上下文窗口大小，默认为5</li>
+ *     <li>extractor.word2vec.train.negative: 负采样数量，默认为5</li>
+ *     <li>extractor.word2vec.train.min.count: 词频低于该值的词语被忽略，默认为5</li>
+ *     <li>extractor.word2vec.train.sample: 高频词的降采样阈值，默认为1e-3，小于等于0表示不降采样</li>
+ *     <li>extractor.word2vec.train.alpha: 初始学习率，Skip-gram默认为0.025，CBOW默认为0.05</li>
+ *     <li>extractor.word2vec.train.iterations: 训练轮数，默认为5</li>
+ *     <li>extractor.word2vec.train.threads: 训练线程数，默认为CPU核数</li>
+ * </ul>
+ *
+ * @author xiatian
+ */
+public class Word2VecTrainer {
+    private static final Logger LOG = LoggerFactory.getLogger(Word2VecTrainer.class);
+
+    private static final int MAX_EXP = 6;
+    private static final int EXP_TABLE_SIZE = 1000;
+    private static final int TABLE_SIZE = 10_000_000;
+
+    /**
+     * 每个训练片段的最大词数，过长的文档被拆分为多个片段
+     */
+    private static final int MAX_SENTENCE_LENGTH = 1000;
+
+    private final Segment segment;
+    private final boolean cbow;
+    private final int size;
+    private final int window;
+    private final int negative;
+    private final int minCount;
+    private final double sample;
+    private final float startAlpha;
+    private final int iterations;
+    private final int threads;
+
+    private final float[] expTable = new float[EXP_TABLE_SIZE];
+
+    private String[] vocab;
+    private long[] counts;
+    private Map<String, Integer> vocabIndex;
+    private long trainWords;
+
+    private int[] table;
+    private float[] syn0;
+    private float[] syn1neg;
+
+    /**
+     * 已经训练的词数，用于线性衰减学习率
+     */
+    private final AtomicLong processedWords = new AtomicLong();
+
+    public Word2VecTrainer(Configuration conf) {
+        this(conf, SegmentFactory.getSegment(conf));
+    }
+
+    public Word2VecTrainer(Configuration conf, Segment segment) {
+        this.segment = segment;
+        this.cbow = "cbow".equalsIgnoreCase(conf.get("extractor.word2vec.train.model", "skip-gram"));
+        this.size = conf.getInt("extractor.word2vec.train.size", 100);
+        this.window = conf.getInt("extractor.word2vec.train.window", 5);
+        this.negative = conf.getInt("extractor.word2vec.train.negative", 5);
+        this.minCount = conf.getInt("extractor.word2vec.train.min.count", 5);
+        this.sample = conf.getFloat("extractor.word2vec.train.sample", 1e-3f);
+        this.startAlpha = conf.getFloat("extractor.word2vec.train.alpha", cbow ? 0.05f : 0.025f);
+        this.iterations = conf.getInt("extractor.word2vec.train.iterations", 5);
+        this.threads = Math.max(1, conf.getInt("extractor.word2vec.train.threads",
+                Runtime.getRuntime().availableProcessors()));
+
+        for (int i = 0; i < EXP_TABLE_SIZE; i++) {
+            double e = Math.exp((i / (double) EXP_TABLE_SIZE * 2 - 1) * MAX_EXP);
+            expTable[i] = (float) (e / (e + 1));
+        }
+    }
+
+    /**
+     * 训练词向量并保存到output
+     *
+     * @param documents 文档迭代器，每个元素为一篇文档的纯文本，只读取一遍
+     * @param output    模型文件
+     */
+    public void train(Iterator<String> documents, File output) throws IOException {
+        File segmented = File.createTempFile("word2vec-", ".seg",
+                output.getAbsoluteFile().getParentFile());
+        try {
+            long start = System.currentTimeMillis();
+            buildVocabulary(documents, segmented);
+            LOG.info("vocabulary: {} words, {} training words, built in {} ms.",
+                    vocab.length, trainWords, System.currentTimeMillis() - start);
+            if (vocab.length == 0) {
+                throw new IOException("语料中没有词频不低于" + minCount + "的词语");
+            }
+
+            initNetwork();
+            start = System.currentTimeMillis();
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                try (BufferedReader reader = Files.newBufferedReader(segmented.toPath(), StandardCharsets.UTF_8)) {
+                    Iterator<String> lines = reader.lines().iterator();
+                    DocumentPipeline.process(lines, threads, "word2vec-trainer", this::newTrainingWorker, this::reportProgress);
+                }
+                LOG.info("iteration {}/{} finished, {} ms elapsed.", iteration + 1, iterations,
+                        System.currentTimeMillis() - start);
+            }
+            writeModel(output);
+        } finally {
+            segmented.delete();
+        }
+    }
+
+    /**
+     * 并行分词并统计词频，分词结果以空格分隔、每篇文档一行写入segmented
+     */
+    private void buildVocabulary(Iterator<String> documents, File segmented) throws IOException {
+        List<Map<String, long[]>> localCounts = Collections.synchronizedList(new ArrayList<>());
+        try (BufferedWriter writer = Files.newBufferedWriter(segmented.toPath(), StandardCharsets.UTF_8)) {
+            DocumentPipeline.process(documents, threads, "word2vec-vocabulary", () -> {
+                Map<String, long[]> local = new HashMap<>();
+                localCounts.add(local);
+                StringBuilder line = new StringBuilder();
+                return text -> {
+                    line.setLength(0);
+                    for (SegWord w : segment.tag(text)) {
+                        if ((w.posFlags & SegWord.PUNCTUATION) != 0 || w.word.trim().isEmpty()) {
+                            continue;
+                        }
+                        String word = w.word.trim().replace(' ', '_');
+                        local.computeIfAbsent(word, k -> new long[1])[0]++;
+                        if (line.length() > 0) {
+                            line.append(' ');
+                        }
+                        line.append(word);
+                    }
+                    if (line.length() > 0) {
+                        line.append('\n');
+                        try {
+                            synchronized (writer) {
+                                writer.write(line.toString());
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                };
+            }, this::reportProgress);
+        }
+
+        Map<String, long[]> total = new HashMap<>();
+        for (Map<String, long[]> local : localCounts) {
+            for (Map.Entry<String, long[]> entry : local.entrySet()) {
+                total.computeIfAbsent(entry.getKey(), k -> new long[1])[0] += entry.getValue()[0];
+            }
+        }
+
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : total.entrySet()) {
+            if (entry.getValue()[0] >= minCount) {
+                entries.add(entry);
+            }
+        }
+        //按照词频从高到低排列，与word2vec的输出保持一致
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+        vocab = new String[entries.size()];
+        counts = new long[entries.size()];
+        vocabIndex = new HashMap<>(entries.size() * 2);
+        trainWords = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            vocab[i] = entries.get(i).getKey();
+            counts[i] = entries.get(i).getValue()[0];
+            vocabIndex.put(vocab[i], i);
+            trainWords += counts[i];
+        }
+    }
+
+    private void initNetwork() {
+        long cells = (long) vocab.length * size;
+        if (cells > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("词表过大：" + vocab.length + " * " + size);
+        }
+        syn0 = new float[(int) cells];
+        syn1neg = new float[(int) cells];
+        long next = 1;
+        for (int i = 0; i < syn0.length; i++) {
+            next = next * 25214903917L + 11;
+            syn0[i] = (((next & 0xFFFF) / 65536f) - 0.5f) / size;
+        }
+
+        //负采样的一元分布表，词语被选中的概率与词频的0.75次方成正比
+        table = new int[TABLE_SIZE];
+        double power = 0.75, totalPower = 0;
+        for (long count : counts) {
+            totalPower += Math.pow(count, power);
+        }
+        int word = 0;
+        double cumulative = Math.pow(counts[0], power) / totalPower;
+        for (int a = 0; a < TABLE_SIZE; a++) {
+            table[a] = word;
+            if (a / (double) TABLE_SIZE > cumulative && word < vocab.length - 1) {
+                word++;
+                cumulative += Math.pow(counts[word], power) / totalPower;
+            }
+        }
+        processedWords.set(0);
+    }
+
+    private void reportProgress() {
+        if (syn0 == null) {
+            LOG.info("building vocabulary ...");
+        } else {
+            long processed = processedWords.get();
+            LOG.info("progress: {}%, alpha: {}", String.format("%.2f", processed * 100.0 / (iterations * trainWords + 1)),
+                    String.format("%.6f", alpha(processed)));
+        }
+    }
+
+    private float alpha(long processed) {
+        return startAlpha * Math.max(0.0001f, 1 - processed / (float) (iterations * trainWords + 1));
+    }
+
+    /**
+     * 训练线程：把一行分词结果转换为词语下标，降采样后按照片段训练。
+     * 所有线程共享syn0和syn1neg，不加锁更新(Hogwild)，词表较大时不同线程很少同时更新同一个向量
+     */
+    private Consumer<String> newTrainingWorker() {
+        float[] neu1 = new float[size];
+        float[] neu1e = new float[size];
+        int[] sentence = new int[MAX_SENTENCE_LENGTH];
+        long[] random = new long[]{Thread.currentThread().getId()};
+        double threshold = sample * trainWords;
+
+        return line -> {
+            int length = 0;
+            int words = 0;
+            float alpha = alpha(processedWords.get());
+            StringTokenizer tokenizer = new StringTokenizer(line, " ");
+            while (tokenizer.hasMoreTokens()) {
+                Integer index = vocabIndex.get(tokenizer.nextToken());
+                if (index == null) {
+                    continue;
+                }
+                words++;
+                if (sample > 0) {
+                    double keep = (Math.sqrt(counts[index] / threshold) + 1) * threshold / counts[index];
+                    random[0] = random[0] * 25214903917L + 11;
+                    if (keep < (random[0] & 0xFFFF) / 65536.0) {
+                        continue;
+                    }
+                }
+                sentence[length++] = index;
+                if (length == MAX_SENTENCE_LENGTH) {
+                    trainSentence(sentence, length, alpha, neu1, neu1e, random);
+                    length = 0;
+                }
+            }
+            if (length > 0) {
+                trainSentence(sentence, length, alpha, neu1, neu1e, random);
+            }
+            processedWords.addAndGet(words);
+        };
+    }
+
+    private void trainSentence(int[] sentence, int length, float alpha, float[] neu1, float[] neu1e, long[] random) {
+        for (int position = 0; position < length; position++) {
+            int word = sentence[position];
+            random[0] = random[0] * 25214903917L + 11;
+            int b = (int) Long.remainderUnsigned(random[0], window);
+            int from = Math.max(0, position - window + b);
+            int to = Math.min(length - 1, position + window - b);
+
+            if (cbow) {
+                Arrays.fill(neu1, 0);
+                Arrays.fill(neu1e, 0);
+                int contexts = 0;
+                for (int c = from; c <= to; c++) {
+                    if (c != position) {
+                        int l1 = sentence[c] * size;
+                        for (int d = 0; d < size; d++) {
+                            neu1[d] += syn0[l1 + d];
+                        }
+                        contexts++;
+                    }
+                }
+                if (contexts == 0) {
+                    continue;
+                }
+                for (int d = 0; d < size; d++) {
+                    neu1[d] /= contexts;
+                }
+                negativeSampling(word, neu1, 0, neu1e, alpha, random);
+                for (int c = from; c <= to; c++) {
+                    if (c != position) {
+                        int l1 = sentence[c] * size;
+                        for (int d = 0; d < size; d++) {
+                            syn0[l1 + d] += neu1e[d];
+                        }
+                    }
+                }
+            } else {
+                for (int c = from; c <= to; c++) {
+                    if (c == position) {
+                        continue;
+                    }
+                    int l1 = sentence[c] * size;
+                    Arrays.fill(neu1e, 0);
+                    negativeSampling(word, syn0, l1, neu1e, alpha, random);
+                    for (int d = 0; d < size; d++) {
+                        syn0[l1 + d] += neu1e[d];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 以input[offset, offset+size)为输入向量，对目标词语及negative个随机负例计算梯度，
+     * 更新syn1neg并把输入向量的梯度累加到neu1e中
+     */
+    private void negativeSampling(int word, float[] input, int offset, float[] neu1e, float alpha, long[] random) {
+        for (int d = 0; d <= negative; d++) {
+            int target;
+            int label;
+            if (d == 0) {
+                target = word;
+                label = 1;
+            } else {
+                random[0] = random[0] * 25214903917L + 11;
+                target = table[(int) ((random[0] >>> 16) % TABLE_SIZE)];
+                if (target == word) {
+                    continue;
+                }
+                label = 0;
+            }
+            int l2 = target * size;
+            float f = 0;
+            for (int i = 0; i < size; i++) {
+                f += input[offset + i] * syn1neg[l2 + i];
+            }
+            float g;
+            if (f > MAX_EXP) {
+                g = (label - 1) * alpha;
+            } else if (f < -MAX_EXP) {
+                g = label * alpha;
+            } else {
+                g = (label - expTable[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))]) * alpha;
+            }
+            for (int i = 0; i < size; i++) {
+                neu1e[i] += g * syn1neg[l2 + i];
+            }
+            for (int i = 0; i < size; i++) {
+                syn1neg[l2 + i] += g * input[offset + i];
+            }
+        }
+    }
+
+    /**
+     * 按照word2vec的二进制格式保存：文件头为"词数 维数\n"，之后每个词语为"词语 "加上维数个小端序float和换行符。
+     * 保存的向量未归一化，由Word2Vec.loadModel在读取时归一化
+     */
+    private void writeModel(File output) throws IOException {
+        try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(4 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put((vocab.length + " " + size + "\n").getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < vocab.length; i++) {
+                byte[] word = vocab[i].getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < word.length + 2 + size * 4) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                buffer.put(word).put((byte) ' ');
+                for (int d = 0; d < size; d++) {
+                    buffer.putFloat(syn0[i * size + d]);
+                }
+                buffer.put((byte) '\n');
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        LOG.info("word2vec model with {} words saved to {}", vocab.length, output.getCanonicalPath());
+    }
+
+    /**
+     * 从文本文件训练词向量：Word2VecTrainer corpus.txt [word2vec.bin]
+     * <p>
+     * 语料文件每行一篇文档，"id\t文本"格式(如PageDb导出的文章内容)只使用制表符后面的文本
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: Word2VecTrainer corpus.txt [word2vec.bin]");
+            return;
+        }
+        File corpusFile = new File(args[0]);
+        File output = new File(args.length > 1 ? args[1] : "./word2vec.bin");
+        Word2VecTrainer trainer = new Word2VecTrainer(ExtractConf.create());
+        try (BufferedReader reader = Files.newBufferedReader(corpusFile.toPath(), StandardCharsets.UTF_8)) {
+            trainer.train(reader.lines().map(line -> line.substring(line.indexOf('\t') + 1)).iterator(), output);
+        }
+    }
+}
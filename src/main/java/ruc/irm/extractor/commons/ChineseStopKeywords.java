@@ -3,7 +3,10 @@ package ruc.irm.extractor.commons;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 
+import ruc.irm.extractor.keyword.Lexicon;
+
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -14,24 +17,24 @@ import java.util.Set;
  * @date Apr 29, 2016 17:53
  */
 public class ChineseStopKeywords {
-    private static Set<String> stopKeywords = null;
     private ChineseStopKeywords() {
 
     }
 
-    private static Set<String> getStopKeywords() {
-        if (stopKeywords == null) {
-            try {
-                stopKeywords = new HashSet<>();
-                stopKeywords.addAll(Resources.readLines(Resources.getResource("stoplists/cn_keywords.txt"), Charsets.UTF_8));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    /**
+     * 读取stoplists/cn_keywords.txt中的词语
+     */
+    public static Set<String> read() {
+        try {
+            return Collections.unmodifiableSet(new HashSet<>(
+                    Resources.readLines(Resources.getResource("stoplists/cn_keywords.txt"), Charsets.UTF_8)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptySet();
         }
-        return stopKeywords;
     }
 
     public static boolean isStopKeyword(String word) {
-        return ChineseStopWords.isStopWord(word) || getStopKeywords().contains(word);
+        return Lexicon.get().isStopKeyword(word);
     }
 }
@@ -3,7 +3,10 @@ package ruc.irm.extractor.commons;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 
+import ruc.irm.extractor.keyword.Lexicon;
+
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -14,24 +17,24 @@ import java.util.Set;
  * @date Apr 29, 2016 17:53
  */
 public class ChineseStopWords {
-    private static Set<String> stopWords = null;
     private ChineseStopWords() {
 
     }
 
-    private static Set<String> getStopWords() {
-        if (stopWords == null) {
-            try {
-                stopWords = new HashSet<>();
-                stopWords.addAll(Resources.readLines(Resources.getResource("stoplists/cn.txt"), Charsets.UTF_8));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    /**
+     * 读取stoplists/cn.txt中的词语
+     */
+    public static Set<String> read() {
+        try {
+            return Collections.unmodifiableSet(new HashSet<>(
+                    Resources.readLines(Resources.getResource("stoplists/cn.txt"), Charsets.UTF_8)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Collections.emptySet();
         }
-        return stopWords;
     }
 
     public static boolean isStopWord(String word) {
-        return getStopWords().contains(word);
+        return Lexicon.get().isStopWord(word);
     }
 }
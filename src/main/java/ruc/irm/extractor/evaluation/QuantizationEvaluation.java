@@ -0,0 +1,129 @@
+package ruc.irm.extractor.evaluation;
+
+import org.xml.sax.SAXException;
+import ruc.irm.extractor.algorithm.QuantizedVectorStore;
+import ruc.irm.extractor.algorithm.VectorStore;
+import ruc.irm.extractor.algorithm.Word2Vec;
+import ruc.irm.extractor.keyword.graph.EmbeddingWordGraph;
+import ruc.irm.extractor.keyword.graph.WordGraph;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 词向量量化的精度评估：分别使用float模型和量化后的模型(INT8, FP16)，比较
+ * <ul>
+ * <li>词向量部分占用的内存</li>
+ * <li>抽样词语之间相似度的平均绝对误差</li>
+ * <li>抽样词语的前10个近义词的重合比例</li>
+ * <li>测试文章使用NingJianfei方法(EmbeddingWordGraph)抽取的前topN个关键词的重合比例</li>
+ * </ul>
+ * 用法：QuantizationEvaluation [word2vec.bin] [data/articles.xml] [topN]
+ *
+ * @author xiatian
+ */
+public class QuantizationEvaluation {
+    private static final int SAMPLE_WORDS = 200;
+    private static final int NEIGHBORS = 10;
+
+    private static double overlap(Iterable<String> expected, Iterable<String> actual, int k) {
+        Set<String> set = new HashSet<>();
+        for (String s : expected) {
+            set.add(s);
+        }
+        if (set.isEmpty()) {
+            return 1.0;
+        }
+        int matched = 0;
+        for (String s : actual) {
+            if (set.contains(s)) {
+                matched++;
+            }
+        }
+        return matched * 1.0 / Math.min(k, set.size());
+    }
+
+    private static Set<String> neighborNames(Set<Word2Vec.WordEntry> entries) {
+        Set<String> names = new HashSet<>();
+        if (entries != null) {
+            for (Word2Vec.WordEntry entry : entries) {
+                names.add(entry.name);
+            }
+        }
+        return names;
+    }
+
+    private static List<String> keywords(Word2Vec word2Vec, XmlArticleReader.Article article, int topN) {
+        //与TextRankExtractor中NingJianfei方法的参数保持一致
+        WordGraph graph = new EmbeddingWordGraph(word2Vec, 0.1f, 0.9f, 0.0f, true);
+        graph.build(article.title, 30.0f);
+        graph.build(article.content, 1.0f);
+        return graph.findTopKeywords(topN, false);
+    }
+
+    public static void evaluate(String modelPath, File articleFile, int topN)
+            throws IOException, ParserConfigurationException, SAXException {
+        Word2Vec floatModel = new Word2Vec().loadModel(modelPath);
+        floatModel.setTopNSize(NEIGHBORS);
+        VectorStore floatStore = floatModel.getStore();
+        long floatBytes = 4L * floatStore.words() * floatStore.size();
+
+        int step = Math.max(1, floatStore.words() / SAMPLE_WORDS);
+
+        for (QuantizedVectorStore.Type type : QuantizedVectorStore.Type.values()) {
+            Word2Vec model = floatModel.quantize(type);
+            model.setTopNSize(NEIGHBORS);
+            QuantizedVectorStore store = (QuantizedVectorStore) model.getStore();
+
+            double similarityError = 0;
+            double neighborAgreement = 0;
+            int samples = 0;
+            int pairs = 0;
+            for (int i = 0; i < floatStore.words(); i += step) {
+                String word = floatStore.wordAt(i);
+                for (int j = i + step; j < floatStore.words() && j < i + 10 * step; j += step) {
+                    similarityError += Math.abs(floatStore.dot(i, j) - store.dot(i, j));
+                    pairs++;
+                }
+                neighborAgreement += overlap(neighborNames(floatModel.distance(word)),
+                        neighborNames(model.distance(word)), NEIGHBORS);
+                samples++;
+            }
+
+            double keywordAgreement = 0;
+            int articles = 0;
+            if (articleFile.exists()) {
+                XmlArticleReader reader = new XmlArticleReader();
+                reader.open(articleFile);
+                while (reader.hasNext()) {
+                    XmlArticleReader.Article article = reader.next();
+                    keywordAgreement += overlap(keywords(floatModel, article, topN), keywords(model, article, topN), topN);
+                    articles++;
+                }
+            }
+
+            System.out.println(type + ":");
+            System.out.println("\t内存占用: " + store.vectorBytes() + " / " + floatBytes + " 字节 ("
+                    + String.format("%.1f%%", store.vectorBytes() * 100.0 / floatBytes) + ")");
+            System.out.println("\t相似度平均绝对误差: " + (pairs == 0 ? 0 : similarityError / pairs));
+            System.out.println("\t前" + NEIGHBORS + "个近义词重合比例: " + (samples == 0 ? 0 : neighborAgreement / samples));
+            if (articles > 0) {
+                System.out.println("\t前" + topN + "个关键词重合比例(" + articles + "篇文章): " + keywordAgreement / articles);
+            } else {
+                System.out.println("\t测试文章不存在:" + articleFile.getAbsolutePath());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, ParserConfigurationException, SAXException {
+        String modelPath = args.length > 0 ? args[0] : "./word2vec.bin";
+        File articleFile = new File(args.length > 1 ? args[1] : "data/articles.xml");
+        int topN = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        evaluate(modelPath, articleFile, topN);
+    }
+}
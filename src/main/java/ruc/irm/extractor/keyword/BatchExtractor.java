@@ -0,0 +1,221 @@
+package ruc.irm.extractor.keyword;
+
+import org.zhinang.conf.Configuration;
+import ruc.irm.extractor.commons.ExtractConf;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 批量抽取关键词：文档在固定大小的线程池中并行处理，结果按照输入顺序返回。
+ * <p>
+ * 同时处理的文档数量不超过maxInFlight，只有调用者取走前面的结果后才继续提交后面的文档，
+ * 输入可以是很大的文档流，不会一次全部读入内存。单篇文档抽取失败时只在对应的结果中记录异常，
+ * 不影响其他文档。
+ * <p>
+ * 工作线程在整个批处理过程中保持不变，HanSegment等按线程缓存的分词器在各线程中只创建一次。
+ * 支持如下参数：
+ * <ul>
+ *     <li>extractor.batch.threads: 工作线程数量，默认为CPU核数</li>
+ *     <li>extractor.batch.inflight: 同时处理的最大文档数量，默认为线程数量的4倍</li>
+ * </ul>
+ *
+ * @author xiatian
+ */
+public class BatchExtractor implements AutoCloseable {
+    private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+    private final KeywordExtractor extractor;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+
+    /**
+     * 批量处理的一篇文档
+     */
+    public static final class Document {
+        private final String id;
+        private final String title;
+        private final String content;
+
+        public Document(String id, String title, String content) {
+            this.id = id;
+            this.title = title == null ? "" : title;
+            this.content = content == null ? "" : content;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * 一篇文档的抽取结果，抽取失败时keywords为空列表，error为对应的异常
+     */
+    public static final class Result {
+        private final int index;
+        private final String id;
+        private final List<String> keywords;
+        private final Throwable error;
+        private final long millis;
+
+        Result(int index, String id, List<String> keywords, Throwable error, long millis) {
+            this.index = index;
+            this.id = id;
+            this.keywords = keywords;
+            this.error = error;
+            this.millis = millis;
+        }
+
+        /**
+         * 文档在输入中的序号，从0开始
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public List<String> getKeywords() {
+            return keywords;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * 抽取耗时(毫秒)
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return index + "\t" + id + "\t" + (error == null ? String.join(" ", keywords) : "ERROR: " + error);
+        }
+    }
+
+    public BatchExtractor(KeywordExtractor extractor) {
+        this(extractor, ExtractConf.create());
+    }
+
+    public BatchExtractor(KeywordExtractor extractor, Configuration conf) {
+        this(extractor, conf.getInt("extractor.batch.threads", Runtime.getRuntime().availableProcessors()),
+                conf.getInt("extractor.batch.inflight", 0));
+    }
+
+    /**
+     * @param extractor   关键词抽取程序，需要能够被多个线程同时调用，如TextRankExtractor
+     * @param threads     工作线程数量
+     * @param maxInFlight 同时处理的最大文档数量，小于等于0时为线程数量的4倍
+     */
+    public BatchExtractor(KeywordExtractor extractor, int threads, int maxInFlight) {
+        this.extractor = extractor;
+        int poolSize = Math.max(1, threads);
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : poolSize * 4;
+        String prefix = "batch-extractor-" + POOL_ID.incrementAndGet() + "-";
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread thread = new Thread(r, prefix + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 抽取一组文档的关键词，全部完成后按照输入顺序返回
+     */
+    public List<Result> extract(List<Document> documents, int topN) {
+        List<Result> results = new ArrayList<>(documents.size());
+        extract(documents.iterator(), topN).forEachRemaining(results::add);
+        return results;
+    }
+
+    /**
+     * 以流的方式抽取关键词，返回的流按照输入顺序给出结果
+     */
+    public Stream<Result> extract(Stream<Document> documents, int topN) {
+        Iterator<Result> results = extract(documents.iterator(), topN);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(documents::close);
+    }
+
+    /**
+     * 以迭代器的方式抽取关键词：调用next()时等待下一篇文档的结果，并补充提交后面的文档，
+     * 保持同时处理的文档数量不超过maxInFlight
+     */
+    public Iterator<Result> extract(Iterator<Document> documents, int topN) {
+        return new Iterator<Result>() {
+            private final ArrayDeque<Future<Result>> window = new ArrayDeque<>();
+            private int submitted = 0;
+
+            private void fill() {
+                while (window.size() < maxInFlight && documents.hasNext()) {
+                    window.add(submit(submitted++, documents.next(), topN));
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !window.isEmpty();
+            }
+
+            @Override
+            public Result next() {
+                fill();
+                Future<Result> future = window.poll();
+                if (future == null) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("batch extraction interrupted.");
+                } catch (ExecutionException e) {
+                    //submit中已经捕获了所有异常，不会出现
+                    throw new IllegalStateException(e.getCause());
+                } finally {
+                    fill();
+                }
+            }
+        };
+    }
+
+    private Future<Result> submit(int index, Document document, int topN) {
+        return executor.submit(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                List<String> keywords = extractor.extractAsList(document.getTitle(), document.getContent(), topN);
+                return new Result(index, document.getId(), keywords, null, System.currentTimeMillis() - start);
+            } catch (Throwable e) {
+                return new Result(index, document.getId(), Collections.emptyList(), e,
+                        System.currentTimeMillis() - start);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,360 @@
+package ruc.irm.extractor.keyword;
+
+import org.zhinang.conf.Configuration;
+import ruc.irm.extractor.commons.ExtractConf;
+import ruc.irm.extractor.keyword.graph.EmbeddingWordGraph;
+import ruc.irm.extractor.keyword.graph.WordGraph;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带截止时间的关键词抽取：根据剩余时间逐级降低计算量，尽量在截止时间之前给出结果。
+ * <p>
+ * 降级级别依次为：
+ * <ol>
+ *     <li>FULL: 完整计算</li>
+ *     <li>FEWER_ITERATIONS: 减少迭代次数</li>
+ *     <li>SMALLER_WORD_BUDGET: 减少读入词图的词语数量，词图规模变小，迭代计算按照节点数量的平方减少</li>
+ *     <li>NO_PHRASE: 不再合并短语，直接返回词语</li>
+ *     <li>FREQUENCY: 不进行迭代计算，按照词频和节点重要性排序</li>
+ * </ol>
+ * 抽取开始前根据文本长度估计构建词图和迭代计算的耗时，选择能够在剩余时间内完成的级别；
+ * 词图构建完成后根据实际的节点数量再检查一次，时间不足时继续降级。耗时的估计值按照每次抽取的实际耗时
+ * 以指数滑动平均的方式更新。
+ * <p>
+ * 返回的CompletableFuture不会在截止时间被取消：超过截止时间才完成的结果仍然正常返回，并标记为late，
+ * 调用者可以不再等待，但已经完成的计算不会被丢弃，例如可以在之后从同一个future中取出结果放入缓存。
+ * 通过{@link #submit}提交时，截止时间到达而计算尚未完成的情况下，可以取出词图构建之后按照词频排序的结果。
+ * 支持如下参数：
+ * <ul>
+ *     <li>extractor.deadline.threads: 工作线程数量，默认为CPU核数</li>
+ *     <li>extractor.deadline.iterations: 完整计算的迭代次数，默认为20</li>
+ *     <li>extractor.deadline.reduced.iterations: 降级后的迭代次数，默认为8</li>
+ *     <li>extractor.deadline.word.budget: 降级后读入词图的最大词语数量，默认为300</li>
+ * </ul>
+ *
+ * @author xiatian
+ */
+public class DeadlineExtractor implements AutoCloseable {
+    private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+    /**
+     * 估计值的指数滑动平均系数
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * 降级级别，按照计算量从大到小排列
+     */
+    public enum Level {
+        FULL, FEWER_ITERATIONS, SMALLER_WORD_BUDGET, NO_PHRASE, FREQUENCY
+    }
+
+    /**
+     * 抽取结果，包括实际采用的降级级别
+     */
+    public static final class Result {
+        private final List<String> keywords;
+        private final Level level;
+        private final int iterations;
+        private final int wordBudget;
+        private final long millis;
+        private final boolean late;
+        private final boolean cacheable;
+
+        Result(List<String> keywords, Level level, int iterations, int wordBudget, long millis, boolean late,
+               boolean cacheable) {
+            this.keywords = keywords;
+            this.level = level;
+            this.iterations = iterations;
+            this.wordBudget = wordBudget;
+            this.millis = millis;
+            this.late = late;
+            this.cacheable = cacheable;
+        }
+
+        public List<String> getKeywords() {
+            return keywords;
+        }
+
+        /**
+         * 实际采用的降级级别，同时采用了多项降级措施时为其中最低的级别
+         */
+        public Level getLevel() {
+            return level;
+        }
+
+        /**
+         * 迭代计算的次数，按照词频排序时为0
+         */
+        public int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * 读入词图的最大词语数量，0表示使用词图默认的数量
+         */
+        public int getWordBudget() {
+            return wordBudget;
+        }
+
+        /**
+         * 从提交到完成的耗时(毫秒)，包括排队等待的时间
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * 是否在截止时间之后才完成
+         */
+        public boolean isLate() {
+            return late;
+        }
+
+        /**
+         * 是否按照请求的参数完整计算，并且没有因为词向量模型尚未就绪而退回不使用词向量的词图，
+         * 此时的结果与不限时间的抽取相同，可以放入缓存
+         */
+        public boolean isCacheable() {
+            return cacheable;
+        }
+
+        @Override
+        public String toString() {
+            return level + (late ? "(late)" : "") + "\t" + millis + "ms\t" + String.join(" ", keywords);
+        }
+    }
+
+    /**
+     * 已经提交的一次抽取，截止时间到达时可以取出已经得到的最好结果，计算继续在后台完成
+     */
+    public static final class Extraction {
+        private final CompletableFuture<Result> future = new CompletableFuture<>();
+        private volatile Result partial;
+
+        /**
+         * 最终结果，超过截止时间才完成时标记为late
+         */
+        public CompletableFuture<Result> getFuture() {
+            return future;
+        }
+
+        /**
+         * 最多等待timeout，期间完成时返回最终结果；否则返回词图构建之后按照词频排序的结果(FREQUENCY级别)，
+         * 词图尚未构建完成时抛出TimeoutException
+         */
+        public Result await(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                return future.get(timeout, unit);
+            } catch (TimeoutException e) {
+                Result result = partial;
+                if (result == null) {
+                    throw e;
+                }
+                return result;
+            }
+        }
+    }
+
+    private final TextRankExtractor extractor;
+    private final ExecutorService executor;
+    private final int fullIterations;
+    private final int reducedIterations;
+    private final int reducedWordBudget;
+
+    /**
+     * 每个字符的分词和构建词图耗时(纳秒)
+     */
+    private volatile double buildNanosPerChar = 2000;
+
+    /**
+     * 迭代计算中每个矩阵单元每次迭代的耗时(纳秒)，包括创建矩阵和排序
+     */
+    private volatile double rankNanosPerCell = 10;
+
+    /**
+     * 完整读入时每个字符对应的词图节点数量
+     */
+    private volatile double nodesPerChar = 0.25;
+
+    public DeadlineExtractor(TextRankExtractor extractor) {
+        this(extractor, ExtractConf.create());
+    }
+
+    public DeadlineExtractor(TextRankExtractor extractor, Configuration conf) {
+        this.extractor = extractor;
+        this.fullIterations = conf.getInt("extractor.deadline.iterations", 20);
+        this.reducedIterations = Math.min(fullIterations, conf.getInt("extractor.deadline.reduced.iterations", 8));
+        this.reducedWordBudget = conf.getInt("extractor.deadline.word.budget", 300);
+
+        int threads = Math.max(1, conf.getInt("extractor.deadline.threads",
+                Runtime.getRuntime().availableProcessors()));
+        String prefix = "deadline-extractor-" + POOL_ID.incrementAndGet() + "-";
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, prefix + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 在后台抽取关键词，budgetMillis从调用时开始计算，包括排队等待的时间
+     *
+     * @param title        标题
+     * @param content      正文
+     * @param topN         关键词数量
+     * @param findPhrase   是否合并为短语
+     * @param budgetMillis 允许的耗时(毫秒)
+     */
+    public CompletableFuture<Result> extractAsync(String title, String content, int topN, boolean findPhrase,
+                                                  long budgetMillis) {
+        ExtractOptions options = extractor.getOptions().withTopN(topN).withPhrase(findPhrase)
+                .withIterations(fullIterations);
+        return extractAsync(title, content, options, budgetMillis);
+    }
+
+    /**
+     * 按照单次请求的参数在后台抽取关键词，options为完整计算时使用的参数，降级时在此基础上
+     * 减少迭代次数和读入的词语数量
+     *
+     * @param title        标题
+     * @param content      正文
+     * @param options      通过TextRankExtractor.getOptions()修改得到的参数
+     * @param budgetMillis 允许的耗时(毫秒)
+     */
+    public CompletableFuture<Result> extractAsync(String title, String content, ExtractOptions options,
+                                                  long budgetMillis) {
+        return submit(title, content, options, budgetMillis).getFuture();
+    }
+
+    /**
+     * 与{@link #extractAsync(String, String, ExtractOptions, long)}相同，返回的Extraction在截止时间
+     * 还可以取出按照词频排序的部分结果
+     */
+    public Extraction submit(String title, String content, ExtractOptions options, long budgetMillis) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(Math.max(0, budgetMillis));
+        Extraction extraction = new Extraction();
+        executor.execute(() -> {
+            try {
+                extraction.future.complete(extract(title == null ? "" : title,
+                        content == null ? "" : content, options, start, deadline, extraction));
+            } catch (Throwable e) {
+                extraction.future.completeExceptionally(e);
+            }
+        });
+        return extraction;
+    }
+
+    public CompletableFuture<Result> extractAsync(String title, String content, int topN, long budgetMillis) {
+        return extractAsync(title, content, topN, false, budgetMillis);
+    }
+
+    private Result extract(String title, String content, ExtractOptions options, long start, long deadline,
+                           Extraction extraction) {
+        int chars = title.length() + content.length();
+        int topN = options.getTopN();
+        boolean findPhrase = options.isPhrase();
+        int fullIterations = options.getIterations();
+        int reducedIterations = Math.min(fullIterations, this.reducedIterations);
+        Level level = Level.FULL;
+        int iterations = fullIterations;
+        int wordBudget = options.getMaxWords();
+
+        //抽取之前根据文本长度估计耗时，选择构建词图时的词语数量和计划的迭代次数
+        double buildCost = buildNanosPerChar * chars;
+        double fullNodes = Math.min(nodesPerChar * chars, options.getMaxWords() > 0 ? options.getMaxWords() : 1000);
+        double remaining = deadline - System.nanoTime();
+        if (buildCost + rankCost(fullNodes, fullIterations) > remaining) {
+            if (buildCost + rankCost(fullNodes, reducedIterations) <= remaining) {
+                level = Level.FEWER_ITERATIONS;
+            } else {
+                level = Level.SMALLER_WORD_BUDGET;
+                wordBudget = wordBudget > 0 ? Math.min(wordBudget, reducedWordBudget) : reducedWordBudget;
+            }
+            iterations = reducedIterations;
+        }
+
+        long buildStart = System.nanoTime();
+        WordGraph wordGraph = extractor.buildWordGraph(title, content, options.withMaxWords(wordBudget));
+        long buildEnd = System.nanoTime();
+        int nodes = wordGraph.getWordNodeMap().size();
+
+        //按照词频排序的代价很小，先作为部分结果，截止时间到达而迭代计算尚未完成时返回
+        List<String> byFrequency = nodes == 0 ? Collections.emptyList() : wordGraph.findTopKeywordsByFrequency(topN);
+        extraction.partial = new Result(byFrequency, Level.FREQUENCY, 0, wordBudget,
+                TimeUnit.NANOSECONDS.toMillis(buildEnd - start), buildEnd > deadline, false);
+
+        //词图构建完成后按照实际的节点数量再检查一次
+        remaining = deadline - buildEnd;
+        if (rankCost(nodes, iterations) > remaining) {
+            if (iterations > reducedIterations && rankCost(nodes, reducedIterations) <= remaining) {
+                iterations = reducedIterations;
+                level = max(level, Level.FEWER_ITERATIONS);
+            } else {
+                iterations = 0;
+                level = Level.FREQUENCY;
+            }
+        }
+        //合并短语需要在迭代计算之后另外排序所有的边，剩余时间不够宽裕时不再合并
+        boolean mergePhrase = findPhrase && iterations > 0 && rankCost(nodes, iterations) * 1.25 <= remaining;
+        if (findPhrase && iterations > 0 && !mergePhrase) {
+            level = max(level, Level.NO_PHRASE);
+        }
+
+        List<String> keywords;
+        if (iterations == 0 || nodes == 0) {
+            keywords = byFrequency;
+        } else {
+            keywords = wordGraph.findTopKeywords(topN, mergePhrase, iterations, options.getDampFactor());
+        }
+        long end = System.nanoTime();
+
+        learn(chars, nodes, wordBudget == options.getMaxWords(), iterations, buildEnd - buildStart, end - buildEnd);
+        boolean fallback = wordGraph instanceof EmbeddingWordGraph
+                && !((EmbeddingWordGraph) wordGraph).isEmbeddingUsed();
+        return new Result(keywords, level, iterations, wordBudget,
+                TimeUnit.NANOSECONDS.toMillis(end - start), end > deadline, level == Level.FULL && !fallback);
+    }
+
+    private double rankCost(double nodes, int iterations) {
+        return rankNanosPerCell * nodes * nodes * (iterations + 1);
+    }
+
+    /**
+     * 按照本次抽取的实际耗时更新估计值，多个线程同时更新时个别样本可能丢失，不影响估计
+     */
+    private void learn(int chars, int nodes, boolean fullRead, int iterations, long buildNanos, long rankNanos) {
+        if (chars > 0) {
+            buildNanosPerChar += SMOOTHING * ((double) buildNanos / chars - buildNanosPerChar);
+            if (fullRead && nodes < 1000) {
+                nodesPerChar += SMOOTHING * ((double) nodes / chars - nodesPerChar);
+            }
+        }
+        //节点太少时耗时主要是固定开销，不用于估计
+        if (iterations > 0 && nodes >= 50) {
+            double cells = (double) nodes * nodes * (iterations + 1);
+            rankNanosPerCell += SMOOTHING * (rankNanos / cells - rankNanosPerCell);
+        }
+    }
+
+    private static Level max(Level a, Level b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,54 @@
+package ruc.irm.extractor.keyword;
+
+import ruc.irm.extractor.nlp.SegWord;
+import ruc.irm.extractor.nlp.Segment.Entities;
+
+import java.util.List;
+
+/**
+ * 文档的一次性分析结果：标题和正文的词性标记结果、命名实体以及关键词，
+ * 由TextRankExtractor.analyze生成
+ *
+ * @author xiatian
+ */
+public class DocumentAnalysis {
+    private final List<SegWord> titleWords;
+
+    private final List<SegWord> contentWords;
+
+    private final Entities entities;
+
+    private final List<String> keywords;
+
+    public DocumentAnalysis(List<SegWord> titleWords, List<SegWord> contentWords,
+                            Entities entities, List<String> keywords) {
+        this.titleWords = titleWords;
+        this.contentWords = contentWords;
+        this.entities = entities;
+        this.keywords = keywords;
+    }
+
+    public List<SegWord> getTitleWords() {
+        return titleWords;
+    }
+
+    public List<SegWord> getContentWords() {
+        return contentWords;
+    }
+
+    public Entities getEntities() {
+        return entities;
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentAnalysis{" +
+                "keywords=" + keywords +
+                ", entities=" + entities +
+                '}';
+    }
+}
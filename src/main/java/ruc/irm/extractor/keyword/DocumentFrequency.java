@@ -0,0 +1,281 @@
+package ruc.irm.extractor.keyword;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ruc.irm.extractor.commons.ExtractConf;
+import ruc.irm.extractor.nlp.SegWord;
+import ruc.irm.extractor.nlp.Segment;
+import ruc.irm.extractor.nlp.SegmentFactory;
+import ruc.irm.extractor.util.ByteUtil;
+import ruc.irm.extractor.util.DocumentPipeline;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 语料库的文档频率(DF)表，用于计算词语的IDF权重。
+ * <p>
+ * 文档频率表通过build在语料库(如PageContentDb中的全部文章)上并行统计得到，保存为与MappedVectorStore类似的
+ * 内存映射文件：词表按照UTF-8字节序排序后连续保存，查找时在映射区域上二分查找，不为每个词语创建堆内对象，
+ * 打开文件只需要映射，不需要读取。
+ * <p>
+ * 文件格式(小端序)：
+ * <pre>
+ * int magic, int version, int 词语数量n, int 文档数量
+ * int[n+1] 每个词语在词表区的起始位置
+ * int[n]   与词表顺序一致的文档频率
+ * byte[]   按照UTF-8字节序排序的词表
+ * </pre>
+ * 配置extractor.keyword.df为文档频率表的路径后，WordGraph按照词语的IDF调整节点的重要性。
+ *
+ * @author xiatian
+ */
+public final class DocumentFrequency {
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentFrequency.class);
+
+    private static final int MAGIC = 0x57444643; //"WDFC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private static volatile DocumentFrequency defaultTable = null;
+    private static volatile String defaultPath = null;
+
+    private final File file;
+    private final int terms;
+    private final int documents;
+    private final IntBuffer termOffsets;
+    private final IntBuffer frequencies;
+    private final ByteBuffer vocabulary;
+
+    /**
+     * 最大的IDF，即只在一篇文档中出现的词语的IDF，用于把IDF归一化到(0, 1]
+     */
+    private final double maxIdf;
+
+    private DocumentFrequency(File file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("不是有效的文档频率文件：" + file.getAbsolutePath());
+            }
+            this.terms = header.getInt();
+            this.documents = header.getInt();
+
+            long offsetsBytes = 4L * (terms + 1);
+            this.termOffsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, offsetsBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            this.frequencies = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + offsetsBytes, 4L * terms)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            this.vocabulary = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + offsetsBytes + 4L * terms,
+                    termOffsets.get(terms));
+        }
+        this.maxIdf = idf(1);
+    }
+
+    public static DocumentFrequency open(File file) throws IOException {
+        return new DocumentFrequency(file);
+    }
+
+    /**
+     * 通过extractor.keyword.df配置的文档频率表，没有配置或者打开失败时返回null
+     */
+    public static DocumentFrequency getDefault() {
+        String path = ExtractConf.create().get("extractor.keyword.df", "");
+        if (!path.equals(defaultPath)) {
+            synchronized (DocumentFrequency.class) {
+                if (!path.equals(defaultPath)) {
+                    DocumentFrequency table = null;
+                    if (!path.isEmpty()) {
+                        try {
+                            table = open(new File(path));
+                            LOG.info("document frequency table {} opened, {} terms, {} documents.",
+                                    path, table.terms, table.documents);
+                        } catch (IOException e) {
+                            LOG.error("open document frequency table " + path + " failed.", e);
+                        }
+                    }
+                    defaultTable = table;
+                    defaultPath = path;
+                }
+            }
+        }
+        return defaultTable;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 词语数量
+     */
+    public int terms() {
+        return terms;
+    }
+
+    /**
+     * 统计时的文档数量
+     */
+    public int documents() {
+        return documents;
+    }
+
+    /**
+     * 词语的文档频率，不存在时返回0
+     */
+    public int getDf(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = terms - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return frequencies.get(mid);
+            }
+        }
+        return 0;
+    }
+
+    private int compare(int index, byte[] key) {
+        int start = termOffsets.get(index);
+        int length = termOffsets.get(index + 1) - start;
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (vocabulary.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private double idf(int df) {
+        return Math.log((documents + 1.0) / (df + 1.0)) + 1;
+    }
+
+    /**
+     * 平滑后的IDF：log((N+1)/(df+1)) + 1
+     */
+    public double idf(String term) {
+        return idf(getDf(term));
+    }
+
+    /**
+     * 归一化到(0, 1]的IDF，未出现的词语为1，出现在所有文档中的词语最小
+     */
+    public float idfWeight(String term) {
+        int df = getDf(term);
+        return df == 0 ? 1.0f : (float) (idf(df) / maxIdf);
+    }
+
+    /**
+     * 并行切分文档并统计文档频率，保存为内存映射格式的文件
+     *
+     * @param documents 文档迭代器，每个元素为一篇文档的纯文本
+     * @param segment   分词程序
+     * @param threads   工作线程数量
+     * @param minDf     文档频率低于该值的词语不保存
+     * @param output    输出文件
+     */
+    public static void build(Iterator<String> documents, Segment segment, int threads, int minDf,
+                             File output) throws IOException {
+        long start = System.currentTimeMillis();
+        List<Map<String, int[]>> localCounts = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger documentCount = new AtomicInteger();
+        DocumentPipeline.process(documents, threads, "document-frequency", () -> {
+            Map<String, int[]> local = new HashMap<>();
+            localCounts.add(local);
+            Set<String> seen = new HashSet<>();
+            return text -> {
+                seen.clear();
+                for (SegWord w : segment.tag(text)) {
+                    if ((w.posFlags & SegWord.PUNCTUATION) == 0 && seen.add(w.word)) {
+                        local.computeIfAbsent(w.word, k -> new int[1])[0]++;
+                    }
+                }
+                documentCount.incrementAndGet();
+            };
+        }, () -> LOG.info("counting document frequency, {} documents processed ...", documentCount.get()));
+
+        Map<String, int[]> total = localCounts.isEmpty() ? new HashMap<>() : localCounts.get(0);
+        for (int i = 1; i < localCounts.size(); i++) {
+            for (Map.Entry<String, int[]> entry : localCounts.get(i).entrySet()) {
+                int[] count = total.putIfAbsent(entry.getKey(), entry.getValue());
+                if (count != null) {
+                    count[0] += entry.getValue()[0];
+                }
+            }
+            localCounts.get(i).clear();
+        }
+
+        List<byte[]> keys = new ArrayList<>();
+        Map<byte[], Integer> frequencies = new IdentityHashMap<>();
+        for (Map.Entry<String, int[]> entry : total.entrySet()) {
+            if (entry.getValue()[0] >= minDf) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                keys.add(key);
+                frequencies.put(key, entry.getValue()[0]);
+            }
+        }
+        keys.sort(ByteUtil::compareBytes);
+
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(output.toPath()), 1 << 16))) {
+            ByteUtil.writeIntLE(out, MAGIC);
+            ByteUtil.writeIntLE(out, VERSION);
+            ByteUtil.writeIntLE(out, keys.size());
+            ByteUtil.writeIntLE(out, documentCount.get());
+            int offset = 0;
+            for (byte[] key : keys) {
+                ByteUtil.writeIntLE(out, offset);
+                offset += key.length;
+            }
+            ByteUtil.writeIntLE(out, offset);
+            for (byte[] key : keys) {
+                ByteUtil.writeIntLE(out, frequencies.get(key));
+            }
+            for (byte[] key : keys) {
+                out.write(key);
+            }
+        }
+        LOG.info("document frequency of {} terms in {} documents saved to {} in {} ms.", keys.size(),
+                documentCount.get(), output.getCanonicalPath(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 从文本文件统计文档频率：DocumentFrequency corpus.txt [df.bin] [minDf]
+     * <p>
+     * 语料文件每行一篇文档，"id\t文本"格式(如PageDb导出的文章内容)只使用制表符后面的文本
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: DocumentFrequency corpus.txt [df.bin] [minDf]");
+            return;
+        }
+        File output = new File(args.length > 1 ? args[1] : "./df.bin");
+        int minDf = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        try (BufferedReader reader = Files.newBufferedReader(new File(args[0]).toPath(), StandardCharsets.UTF_8)) {
+            build(reader.lines().map(line -> line.substring(line.indexOf('\t') + 1)).iterator(),
+                    SegmentFactory.getSegment(ExtractConf.create()),
+                    Runtime.getRuntime().availableProcessors(), minDf, output);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package ruc.irm.extractor.keyword;
+
+import ruc.irm.extractor.keyword.TextRankExtractor.GraphType;
+
+import java.util.Arrays;
+
+/**
+ * 单次抽取使用的参数，创建后不能修改，可以在多个线程和请求之间共享。
+ * <p>
+ * 通过TextRankExtractor.getOptions()得到抽取程序按照配置文件设置的默认参数，再用withXxx方法得到修改了
+ * 部分参数的新对象，同一个抽取程序即可按照不同的参数处理不同的请求：
+ * <pre>
+ * ExtractOptions options = extractor.getOptions().withGraphType(GraphType.TextRank).withTopN(5);
+ * List&lt;String&gt; keywords = extractor.extract(title, content, options);
+ * </pre>
+ *
+ * @author xiatian
+ */
+public final class ExtractOptions {
+    private final GraphType graphType;
+    private final float[] weights;
+    private final float lambda;
+    private final int maxWords;
+    private final int iterations;
+    private final float dampFactor;
+    private final int topN;
+    private final boolean phrase;
+
+    ExtractOptions(GraphType graphType, float[] weights, float lambda, int maxWords, int iterations,
+                   float dampFactor, int topN, boolean phrase) {
+        this.graphType = graphType;
+        this.weights = weights;
+        this.lambda = lambda;
+        this.maxWords = maxWords;
+        this.iterations = iterations;
+        this.dampFactor = dampFactor;
+        this.topN = topN;
+        this.phrase = phrase;
+    }
+
+    public GraphType getGraphType() {
+        return graphType;
+    }
+
+    /**
+     * 词语的覆盖、位置和频度影响力因子，为null时使用词图类型的默认值
+     */
+    public float[] getWeights() {
+        return weights == null ? null : weights.clone();
+    }
+
+    float[] weights() {
+        return weights;
+    }
+
+    /**
+     * 标题中词语的权重
+     */
+    public float getLambda() {
+        return lambda;
+    }
+
+    /**
+     * 读入词图的最大词语数量，0表示使用词图默认的数量
+     */
+    public int getMaxWords() {
+        return maxWords;
+    }
+
+    /**
+     * 迭代计算的次数
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * 迭代计算的阻尼系数
+     */
+    public float getDampFactor() {
+        return dampFactor;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    /**
+     * 是否合并为短语
+     */
+    public boolean isPhrase() {
+        return phrase;
+    }
+
+    public ExtractOptions withGraphType(GraphType graphType) {
+        return new ExtractOptions(graphType, weights, lambda, maxWords, iterations, dampFactor, topN, phrase);
+    }
+
+    /**
+     * 指定词语的覆盖、位置和频度影响力因子
+     */
+    public ExtractOptions withWeights(float alpha, float beta, float gamma) {
+        return new ExtractOptions(graphType, new float[]{alpha, beta, gamma}, lambda, maxWords, iterations,
+                dampFactor, topN, phrase);
+    }
+
+    /**
+     * 使用词图类型默认的影响力因子
+     */
+    public ExtractOptions withDefaultWeights() {
+        return new ExtractOptions(graphType, null, lambda, maxWords, iterations, dampFactor, topN, phrase);
+    }
+
+    public ExtractOptions withLambda(float lambda) {
+        return new ExtractOptions(graphType, weights, lambda, maxWords, iterations, dampFactor, topN, phrase);
+    }
+
+    /**
+     * @param maxWords 读入词图的最大词语数量，小于等于0时使用词图默认的数量
+     */
+    public ExtractOptions withMaxWords(int maxWords) {
+        return new ExtractOptions(graphType, weights, lambda, Math.max(0, maxWords), iterations, dampFactor,
+                topN, phrase);
+    }
+
+    public ExtractOptions withIterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be positive: " + iterations);
+        }
+        return new ExtractOptions(graphType, weights, lambda, maxWords, iterations, dampFactor, topN, phrase);
+    }
+
+    public ExtractOptions withDampFactor(float dampFactor) {
+        if (dampFactor <= 0 || dampFactor >= 1) {
+            throw new IllegalArgumentException("damp factor must be in (0, 1): " + dampFactor);
+        }
+        return new ExtractOptions(graphType, weights, lambda, maxWords, iterations, dampFactor, topN, phrase);
+    }
+
+    public ExtractOptions withTopN(int topN) {
+        return new ExtractOptions(graphType, weights, lambda, maxWords, iterations, dampFactor, topN, phrase);
+    }
+
+    public ExtractOptions withPhrase(boolean phrase) {
+        return new ExtractOptions(graphType, weights, lambda, maxWords, iterations, dampFactor, topN, phrase);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ExtractOptions)) return false;
+        ExtractOptions that = (ExtractOptions) o;
+        return graphType == that.graphType && Arrays.equals(weights, that.weights)
+                && Float.compare(lambda, that.lambda) == 0 && maxWords == that.maxWords
+                && iterations == that.iterations && Float.compare(dampFactor, that.dampFactor) == 0
+                && topN == that.topN && phrase == that.phrase;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = graphType.hashCode();
+        h = 31 * h + Arrays.hashCode(weights);
+        h = 31 * h + Float.hashCode(lambda);
+        h = 31 * h + maxWords;
+        h = 31 * h + iterations;
+        h = 31 * h + Float.hashCode(dampFactor);
+        h = 31 * h + topN;
+        return 31 * h + (phrase ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "graph=" + graphType
+                + ",weights=" + (weights == null ? "default" : Arrays.toString(weights))
+                + ",lambda=" + lambda
+                + ",words=" + maxWords
+                + ",iterations=" + iterations
+                + ",damp=" + dampFactor
+                + ",topN=" + topN
+                + ",phrase=" + phrase;
+    }
+}
@@ -0,0 +1,381 @@
+package ruc.irm.extractor.keyword;
+
+import org.zhinang.conf.Configuration;
+import ruc.irm.extractor.commons.ExtractConf;
+import ruc.irm.extractor.keyword.graph.PositionWordGraph;
+import ruc.irm.extractor.keyword.graph.WordGraph;
+import ruc.irm.extractor.keyword.graph.WordNode;
+import ruc.irm.extractor.nlp.LanguageDetector;
+import ruc.irm.extractor.nlp.LanguageDetector.Language;
+import ruc.irm.extractor.nlp.SegWord;
+import ruc.irm.extractor.nlp.SegmentFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * 持续增长的文档(如直播文字、会议记录)的增量关键词抽取。
+ * <p>
+ * 会话中保存一个词语位置加权的词图(与PositionRank相同)，每次追加一段文本时只切分新文本，
+ * 在原有词图上增加词频和邻接关系，然后从上一次的得分出发，只重新计算受影响的节点：
+ * <ol>
+ *     <li>每个节点的出边统计值(邻接词语的数量、重要性之和与词频之和)增量维护：新文本中的词语按照词频和重要性的
+ *     变化量调整其邻接词语的统计值，新的邻接关系只调整两端节点的统计值，不再遍历邻接词语的邻接表</li>
+ *     <li>新文本中出现的词语及其相邻词语的转移权重发生了变化，重新计算这些节点的得分</li>
+ *     <li>得分变化超过容差的节点，把变化传播给其指向的节点，直到变化小于容差</li>
+ * </ol>
+ * 每次追加更新统计值的代价与新文本中的词语及其邻接词语的数量成正比，最多更新的节点次数与新文本中的词语数量成正比，
+ * 未完成的更新保留到下一次追加时继续，单次追加的耗时不随整篇文档的长度增长。可以通过main方法测量每次追加的耗时。
+ * 得分没有按照节点数量归一化，新增节点不会改变已有节点的得分，排序结果与对全文构建词图迭代计算一致，
+ * 只有更新次数受限时存在少量误差，可以通过refresh对全部节点重新迭代。
+ * <p>
+ * 每次追加的文本单独构建邻接关系，前后两段文本之间不建立相邻关系。会话不是线程安全的。
+ * 与TextRankExtractor一致，按照第一段非空文本(有标题时为标题)的语言选择分词程序。
+ * 支持如下参数：
+ * <ul>
+ *     <li>extractor.keyword.detect.language: 是否检测文本的语言，默认为true，为false时总是使用中文分词</li>
+ *     <li>extractor.session.updates.per.word: 每个新词语允许的节点更新次数，默认为8</li>
+ *     <li>extractor.session.tolerance: 停止传播的相对容差，默认为0.0001</li>
+ * </ul>
+ *
+ * @author xiatian
+ */
+public class ExtractionSession {
+    private static final double DAMP_FACTOR = 0.85;
+    private static final int MIN_UPDATES = 64;
+
+    /**
+     * 节点的出边统计值，计算该节点指向其他节点的转移概率时使用
+     */
+    private static final class OutStats {
+        int degree;
+        double totalImportance;
+        long totalCount;
+    }
+
+    private final Configuration conf;
+    private final WordGraph graph;
+    private final boolean detectLanguage;
+    private boolean segmentChosen = false;
+    private final float alpha;
+    private final float beta;
+    private final float gamma;
+    private final int updatesPerWord;
+    private final double tolerance;
+
+    private final Map<WordNode, OutStats> outStats = new HashMap<>();
+
+    /**
+     * 按照得分从大到小排列的节点，修改得分前需要先移除
+     */
+    private final TreeSet<WordNode> ranking = new TreeSet<>(
+            Comparator.comparingDouble(WordNode::getScore).reversed().thenComparing(WordNode::getName));
+
+    /**
+     * 等待重新计算得分的节点，未处理完的节点保留到下一次追加
+     */
+    private final LinkedHashSet<WordNode> pending = new LinkedHashSet<>();
+
+    private long appendedChars = 0;
+
+    public ExtractionSession(String title) {
+        this(ExtractConf.create(), title);
+    }
+
+    public ExtractionSession(Configuration conf, String title) {
+        this(conf, title, 0.33f, 0.34f, 0.33f);
+    }
+
+    /**
+     * @param conf  配置
+     * @param title 文档标题，标题中的词语按照extractor.keyword.lambda加权
+     * @param alpha 词语的覆盖影响力因子
+     * @param beta  词语的位置影响力因子
+     * @param gamma 词语的频度影响力因子
+     */
+    public ExtractionSession(Configuration conf, String title, float alpha, float beta, float gamma) {
+        this.conf = conf;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.gamma = gamma;
+        this.updatesPerWord = conf.getInt("extractor.session.updates.per.word", 8);
+        this.tolerance = conf.getFloat("extractor.session.tolerance", 0.0001f);
+        this.detectLanguage = conf.getBoolean("extractor.keyword.detect.language", true);
+
+        this.graph = new PositionWordGraph(alpha, beta, gamma, true);
+        this.graph.setMaxReadableWordCount(Integer.MAX_VALUE);
+        if (title != null && !title.isEmpty()) {
+            update(title, conf.getFloat("extractor.keyword.lambda", 30.0f));
+        }
+    }
+
+    /**
+     * 追加一段文本，返回更新后的前topN个关键词
+     */
+    public List<String> append(String text, int topN) {
+        if (text != null && !text.isEmpty()) {
+            update(text, 1.0f);
+        }
+        return getKeywords(topN);
+    }
+
+    private void update(String text, float importance) {
+        if (!segmentChosen) {
+            chooseSegment(text);
+        }
+        List<SegWord> words = graph.getSegment().tag(text);
+        Map<String, WordNode> nodes = graph.getWordNodeMap();
+
+        //构建词图之前记录新文本中词语原来的词频和重要性，以及新文本将要增加的邻接关系
+        Map<String, double[]> previous = new LinkedHashMap<>();
+        Map<String, Set<String>> newEdges = new HashMap<>();
+        String last = null;
+        for (SegWord word : words) {
+            if (!isCandidate(word)) {
+                continue;
+            }
+            WordNode node = nodes.get(word.word);
+            previous.computeIfAbsent(word.word, w -> node == null ? new double[2]
+                    : new double[]{node.getCount(), node.getImportance()});
+            if (last != null) {
+                addIfNew(newEdges, nodes, last, word.word);
+                addIfNew(newEdges, nodes, word.word, last);
+            }
+            last = word.word;
+        }
+
+        graph.build(words, importance);
+        appendedChars += text.length();
+
+        List<WordNode> touched = new ArrayList<>(previous.size());
+        for (String word : previous.keySet()) {
+            WordNode node = nodes.get(word);
+            if (!outStats.containsKey(node)) {
+                node.setScore(1 - DAMP_FACTOR);
+                outStats.put(node, new OutStats());
+                ranking.add(node);
+            }
+            touched.add(node);
+        }
+
+        //已有的邻接关系：按照词语的词频和重要性的变化量调整其邻接词语的统计值
+        Set<WordNode> affected = new LinkedHashSet<>(touched);
+        for (WordNode node : touched) {
+            double[] before = previous.get(node.getName());
+            long countDelta = node.getCount() - (long) before[0];
+            double importanceDelta = node.getImportance() - before[1];
+            Set<String> added = newEdges.getOrDefault(node.getName(), Collections.emptySet());
+            for (String adjacent : node.getAdjacentWords().keySet()) {
+                WordNode neighbor = nodes.get(adjacent);
+                affected.add(neighbor);
+                if (!added.contains(adjacent)) {
+                    //邻接关系是双向的，node原来就是neighbor的邻接词语
+                    OutStats stats = outStats.get(neighbor);
+                    stats.totalCount += countDelta;
+                    stats.totalImportance += importanceDelta;
+                }
+            }
+        }
+
+        //新的邻接关系：增加出边数量，并按照邻接词语当前的词频和重要性增加统计值
+        for (Map.Entry<String, Set<String>> entry : newEdges.entrySet()) {
+            OutStats stats = outStats.get(nodes.get(entry.getKey()));
+            for (String adjacent : entry.getValue()) {
+                WordNode to = nodes.get(adjacent);
+                stats.degree++;
+                stats.totalCount += to.getCount();
+                stats.totalImportance += to.getImportance();
+            }
+        }
+        pending.addAll(affected);
+
+        propagate(Math.max(MIN_UPDATES, (long) updatesPerWord * touched.size()));
+    }
+
+    /**
+     * 与WordGraph.build一致：跳过标点，只有长度不小于2的候选词语进入词图，相邻的候选词语之间建立邻接关系
+     */
+    private static boolean isCandidate(SegWord word) {
+        return (word.posFlags & SegWord.PUNCTUATION) == 0 && (word.posFlags & SegWord.CANDIDATE) != 0
+                && word.word.length() >= 2;
+    }
+
+    /**
+     * from的邻接词语中还没有to时，记录新的邻接关系from->to
+     */
+    private static void addIfNew(Map<String, Set<String>> newEdges, Map<String, WordNode> nodes,
+                                 String from, String to) {
+        WordNode node = nodes.get(from);
+        if (node == null || !node.getAdjacentWords().containsKey(to)) {
+            newEdges.computeIfAbsent(from, w -> new HashSet<>()).add(to);
+        }
+    }
+
+    /**
+     * 按照文本的语言选择分词程序，非中文文本使用对应语言的Lucene分词
+     */
+    private void chooseSegment(String text) {
+        segmentChosen = true;
+        if (detectLanguage) {
+            Language language = LanguageDetector.detect(text);
+            if (language != Language.ZH) {
+                graph.setSegment(SegmentFactory.getLuceneSegment(conf, language.getCode()));
+            }
+        }
+    }
+
+    /**
+     * 重新计算节点的出边统计值，消除增量维护时累积的浮点误差
+     */
+    private void refreshOutStats(WordNode node) {
+        Map<String, WordNode> nodes = graph.getWordNodeMap();
+        OutStats stats = outStats.get(node);
+        stats.degree = node.getAdjacentWords().size();
+        stats.totalImportance = 0;
+        stats.totalCount = 0;
+        for (String adjacent : node.getAdjacentWords().keySet()) {
+            WordNode to = nodes.get(adjacent);
+            stats.totalImportance += to.getImportance();
+            stats.totalCount += to.getCount();
+        }
+    }
+
+    /**
+     * 从from到to的转移概率，与PositionWordGraph中转移矩阵的计算一致
+     */
+    private double transition(WordNode from, WordNode to) {
+        OutStats stats = outStats.get(from);
+        if (stats.degree == 0) {
+            return 0;
+        }
+        return alpha / stats.degree
+                + beta * to.getImportance() / stats.totalImportance
+                + gamma * to.getCount() / (double) stats.totalCount;
+    }
+
+    /**
+     * 依次重新计算等待队列中节点的得分，得分变化较大时把相邻节点加入队列，最多更新maxUpdates次
+     */
+    private void propagate(long maxUpdates) {
+        Map<String, WordNode> nodes = graph.getWordNodeMap();
+        long updates = 0;
+        Iterator<WordNode> iterator = pending.iterator();
+        while (iterator.hasNext() && updates++ < maxUpdates) {
+            WordNode node = iterator.next();
+            iterator.remove();
+
+            //邻接关系是双向的，相邻节点即指向当前节点的节点
+            double accumulate = 0;
+            for (String adjacent : node.getAdjacentWords().keySet()) {
+                WordNode from = nodes.get(adjacent);
+                accumulate += transition(from, node) * from.getScore();
+            }
+            double score = (1 - DAMP_FACTOR) + DAMP_FACTOR * accumulate;
+            double previous = node.getScore();
+
+            ranking.remove(node);
+            node.setScore(score);
+            ranking.add(node);
+
+            if (Math.abs(score - previous) > tolerance * Math.max(previous, 1 - DAMP_FACTOR)) {
+                for (String adjacent : node.getAdjacentWords().keySet()) {
+                    pending.add(nodes.get(adjacent));
+                }
+                iterator = pending.iterator();
+            }
+        }
+    }
+
+    /**
+     * 重新计算全部节点的出边统计值并迭代计算得分，消除更新次数受限带来的误差
+     *
+     * @param iterations 迭代次数
+     */
+    public void refresh(int iterations) {
+        for (WordNode node : outStats.keySet()) {
+            refreshOutStats(node);
+        }
+        for (int i = 0; i < iterations; i++) {
+            pending.addAll(outStats.keySet());
+            propagate(outStats.size());
+        }
+    }
+
+    /**
+     * 当前得分最高的topN个关键词，不包括停用词
+     */
+    public List<String> getKeywords(int topN) {
+        Lexicon lexicon = Lexicon.get();
+        List<String> keywords = new ArrayList<>(topN);
+        for (WordNode node : ranking) {
+            if (keywords.size() >= topN) {
+                break;
+            }
+            if (!lexicon.isStopKeyword(node.getName())) {
+                keywords.add(node.getName());
+            }
+        }
+        return keywords;
+    }
+
+    /**
+     * 尚未完成重新计算的节点数量
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 词图中的节点数量
+     */
+    public int getWordCount() {
+        return outStats.size();
+    }
+
+    /**
+     * 已经追加的文本长度，包括标题
+     */
+    public long getAppendedChars() {
+        return appendedChars;
+    }
+
+    public WordGraph getWordGraph() {
+        return graph;
+    }
+
+    /**
+     * 测量每次追加的耗时：把文本文件按行切分为若干段依次追加，每隔一段时间输出最近各段的平均耗时和节点数量，
+     * 耗时应与每段的长度相关，而不随已经追加的段数增长。
+     * <pre>
+     * java ruc.irm.extractor.keyword.ExtractionSession article.txt [每次报告的段数]
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8);
+        int interval = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        ExtractionSession session = new ExtractionSession("");
+        long elapsed = 0;
+        long chars = 0;
+        int segments = 0;
+        for (String line : lines) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            long start = System.nanoTime();
+            session.append(line, 10);
+            elapsed += System.nanoTime() - start;
+            chars += line.length();
+            if (++segments % interval == 0) {
+                System.out.printf("segments %d, words %d: %.1f us/segment, %.2f us/char%n", segments,
+                        session.getWordCount(), elapsed / 1000.0 / interval, elapsed / 1000.0 / chars);
+                elapsed = 0;
+                chars = 0;
+            }
+        }
+        System.out.println(session.getKeywords(10));
+    }
+}
@@ -0,0 +1,386 @@
+package ruc.irm.extractor.keyword;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.hankcs.hanlp.HanLP;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zhinang.conf.Configuration;
+import ruc.irm.extractor.algorithm.ModelRegistry;
+import ruc.irm.extractor.algorithm.Word2Vec;
+import ruc.irm.extractor.commons.ExtractConf;
+import ruc.irm.extractor.keyword.graph.EmbeddingWordGraph;
+import ruc.irm.extractor.keyword.graph.WordGraph;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 关键词抽取结果的缓存，以(文本的散列值, 词图类型, 抽取参数, topN, 是否合并短语)为键，
+ * 抽取参数包括抽取程序的配置和单次请求的ExtractOptions。
+ * <p>
+ * 缓存按照结果占用的内存估计值限制总量，超过上限时淘汰最近最少使用的结果。多个请求同时抽取同一篇文档时，
+ * 只有第一个请求进行计算，其余请求等待并共享该结果。
+ * <p>
+ * 修改了停用词表或人工指定的权重后，已缓存的结果全部失效；NingJianfei等依赖词向量的词图在模型就绪之前
+ * 退化为不使用词向量的词图，此时的结果只返回给当前的请求，不放入缓存。
+ * <p>
+ * 持久化文件的头部保存抽取规则的指纹：停用词、关键词停用词和人工指定权重的内容散列值，以及文档频率表、
+ * 词典快照、自定义词典和词向量模型文件的路径、大小和修改时间。启动时指纹与当前的规则不一致，
+ * 说明文件中的结果是按照旧的规则得到的，直接删除该文件。
+ * 支持如下参数：
+ * <ul>
+ *     <li>extractor.cache.max.weight: 缓存结果占用内存的上限(字节)，默认为64MB</li>
+ *     <li>extractor.cache.file: 持久化文件的路径，配置后启动时读入，退出时保存，默认不持久化</li>
+ * </ul>
+ *
+ * @author xiatian
+ */
+public class KeywordCache {
+    private static final Logger LOG = LoggerFactory.getLogger(KeywordCache.class);
+
+    private static final int MAGIC = 0x57444b43; //"WDKC"
+    private static final int VERSION = 2;
+
+    /**
+     * 缓存的键
+     */
+    public static final class Key {
+        private final long hashHigh;
+        private final long hashLow;
+        private final String graphType;
+        private final String parameters;
+        private final int topN;
+        private final boolean phrase;
+
+        Key(long hashHigh, long hashLow, String graphType, String parameters, int topN, boolean phrase) {
+            this.hashHigh = hashHigh;
+            this.hashLow = hashLow;
+            this.graphType = graphType;
+            this.parameters = parameters;
+            this.topN = topN;
+            this.phrase = phrase;
+        }
+
+        static Key of(TextRankExtractor extractor, String title, String content, ExtractOptions options) {
+            ByteBuffer hash = ByteBuffer.wrap(Hashing.murmur3_128().newHasher()
+                    .putInt(title.length())
+                    .putString(title, StandardCharsets.UTF_8)
+                    .putString(content, StandardCharsets.UTF_8)
+                    .hash().asBytes());
+            DocumentFrequency df = DocumentFrequency.getDefault();
+            String parameters = extractor.parameterSignature() + "," + options
+                    + (df == null ? "" : ",df=" + df.getFile().getPath());
+            return new Key(hash.getLong(), hash.getLong(), options.getGraphType().name(), parameters,
+                    options.getTopN(), options.isPhrase());
+        }
+
+        /**
+         * 估计占用的内存(字节)
+         */
+        int weight() {
+            return 64 + 2 * (graphType.length() + parameters.length());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hashHigh == key.hashHigh && hashLow == key.hashLow && topN == key.topN && phrase == key.phrase
+                    && graphType.equals(key.graphType) && parameters.equals(key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = Long.hashCode(hashHigh);
+            h = 31 * h + graphType.hashCode();
+            h = 31 * h + parameters.hashCode();
+            h = 31 * h + topN;
+            return 31 * h + (phrase ? 1 : 0);
+        }
+    }
+
+    /**
+     * 模型尚未就绪时得到的结果，不放入缓存
+     */
+    private static final class Fallback extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> keywords;
+
+        Fallback(List<String> keywords) {
+            super(null, null, false, false);
+            this.keywords = keywords;
+        }
+    }
+
+    private final Cache<Key, List<String>> cache;
+    private final File file;
+
+    /**
+     * 缓存结果时使用的特征表，停用词或人工指定的权重改变后清空缓存
+     */
+    private volatile Lexicon lexicon = Lexicon.get();
+
+    public KeywordCache() {
+        this(ExtractConf.create());
+    }
+
+    public KeywordCache(Configuration conf) {
+        this(conf.getLong("extractor.cache.max.weight", 64L << 20), conf.get("extractor.cache.file", ""));
+    }
+
+    /**
+     * @param maxWeight 缓存结果占用内存的上限(字节)
+     * @param path      持久化文件的路径，为空时不持久化
+     */
+    public KeywordCache(long maxWeight, String path) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Key key, List<String> keywords) -> key.weight() + weight(keywords))
+                .recordStats()
+                .build();
+
+        this.file = path == null || path.isEmpty() ? null : new File(path);
+        if (file != null) {
+            if (file.exists()) {
+                try {
+                    load(file);
+                } catch (IOException e) {
+                    LOG.error("load keyword cache " + file.getAbsolutePath() + " failed.", e);
+                }
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    save(file);
+                } catch (IOException e) {
+                    LOG.error("save keyword cache " + file.getAbsolutePath() + " failed.", e);
+                }
+            }, "keyword-cache-saver"));
+        }
+    }
+
+    private static int weight(List<String> keywords) {
+        int weight = 32;
+        for (String keyword : keywords) {
+            weight += 40 + 2 * keyword.length();
+        }
+        return weight;
+    }
+
+    /**
+     * 抽取关键词，已经缓存时直接返回；同一篇文档正在由其他线程抽取时等待该结果。
+     * 返回的列表不能修改
+     */
+    public List<String> extract(TextRankExtractor extractor, String title, String content, int topN,
+                                boolean findPhrase) {
+        return extract(extractor, title, content, extractor.getOptions().withTopN(topN).withPhrase(findPhrase));
+    }
+
+    /**
+     * 按照单次请求的参数抽取关键词，参数不同的请求分别缓存
+     */
+    public List<String> extract(TextRankExtractor extractor, String title, String content, ExtractOptions options) {
+        String t = title == null ? "" : title;
+        String c = content == null ? "" : content;
+        checkRules();
+
+        try {
+            return cache.get(Key.of(extractor, t, c, options), () -> {
+                WordGraph wordGraph = extractor.buildWordGraph(t, c, options);
+                List<String> keywords = Collections.unmodifiableList(new ArrayList<>(wordGraph.findTopKeywords(
+                        options.getTopN(), options.isPhrase(), options.getIterations(), options.getDampFactor())));
+                if (wordGraph instanceof EmbeddingWordGraph && !((EmbeddingWordGraph) wordGraph).isEmbeddingUsed()) {
+                    throw new Fallback(keywords);
+                }
+                return keywords;
+            });
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof Fallback) {
+                return ((Fallback) e.getCause()).keywords;
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } catch (ExecutionError e) {
+            throw (Error) e.getCause();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public List<String> extract(TextRankExtractor extractor, String title, String content, int topN) {
+        return extract(extractor, title, content, topN, false);
+    }
+
+    /**
+     * 已经缓存的结果，没有缓存时返回null，不进行抽取
+     */
+    public List<String> getIfPresent(TextRankExtractor extractor, String title, String content,
+                                     ExtractOptions options) {
+        checkRules();
+        return cache.getIfPresent(Key.of(extractor, title == null ? "" : title,
+                content == null ? "" : content, options));
+    }
+
+    /**
+     * 放入在其他地方按照options完整计算得到的结果，例如带截止时间的抽取在超时之后才完成的结果
+     */
+    public void put(TextRankExtractor extractor, String title, String content, ExtractOptions options,
+                    List<String> keywords) {
+        checkRules();
+        cache.put(Key.of(extractor, title == null ? "" : title, content == null ? "" : content, options),
+                Collections.unmodifiableList(new ArrayList<>(keywords)));
+    }
+
+    /**
+     * 停用词或人工指定的权重改变后清空缓存
+     */
+    private void checkRules() {
+        Lexicon current = Lexicon.get();
+        if (!current.hasSameRules(lexicon)) {
+            synchronized (this) {
+                if (!current.hasSameRules(lexicon)) {
+                    cache.invalidateAll();
+                    lexicon = current;
+                }
+            }
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * 命中率、计算次数、淘汰数量等统计信息
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 当前抽取规则的指纹，规则的内容或者依赖的文件改变后随之改变
+     */
+    static String rulesFingerprint() {
+        Configuration conf = ExtractConf.create();
+        Hasher hasher = Hashing.murmur3_128().newHasher()
+                .putString(Lexicon.get().fingerprint(), StandardCharsets.UTF_8);
+
+        DocumentFrequency df = DocumentFrequency.getDefault();
+        putFile(hasher, df == null ? null : df.getFile());
+
+        String snapshot = conf.get("extractor.segment.dictionary.snapshot", "");
+        putFile(hasher, snapshot.isEmpty() ? null : new File(snapshot));
+        for (String path : HanLP.Config.CustomDictionaryPath) {
+            putFile(hasher, new File(path.split(" ")[0]));
+        }
+
+        String model = ModelRegistry.getDefaultPath();
+        putFile(hasher, new File(model));
+        putFile(hasher, new File(model + Word2Vec.MAPPED_SUFFIX));
+        return hasher.hash().toString();
+    }
+
+    private static void putFile(Hasher hasher, File file) {
+        if (file == null || !file.exists()) {
+            hasher.putBoolean(false);
+        } else {
+            hasher.putBoolean(true)
+                    .putString(file.getAbsolutePath(), StandardCharsets.UTF_8)
+                    .putLong(file.length())
+                    .putLong(file.lastModified());
+        }
+    }
+
+    /**
+     * 把缓存的结果保存到文件中，先写入临时文件，完成后再替换原文件
+     */
+    public void save(File target) throws IOException {
+        long start = System.currentTimeMillis();
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        File tmp = new File(parent, target.getName() + ".tmp");
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(rulesFingerprint());
+            for (Map.Entry<Key, List<String>> entry : cache.asMap().entrySet()) {
+                Key key = entry.getKey();
+                out.writeBoolean(true);
+                out.writeLong(key.hashHigh);
+                out.writeLong(key.hashLow);
+                out.writeUTF(key.graphType);
+                out.writeUTF(key.parameters);
+                out.writeInt(key.topN);
+                out.writeBoolean(key.phrase);
+                out.writeInt(entry.getValue().size());
+                for (String keyword : entry.getValue()) {
+                    out.writeUTF(keyword);
+                }
+                count++;
+            }
+            out.writeBoolean(false);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        LOG.info("{} cached keyword results saved to {} in {} ms.", count, target.getAbsolutePath(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 读入save保存的结果，与当前缓存合并。文件由旧版本生成，或者保存时的规则指纹与当前不一致时，
+     * 其中的结果已经过期，删除该文件
+     */
+    public void load(File source) throws IOException {
+        long start = System.currentTimeMillis();
+        int count = 0;
+        boolean stale = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是有效的关键词缓存文件：" + source.getAbsolutePath());
+            }
+            stale = in.readInt() != VERSION || !in.readUTF().equals(rulesFingerprint());
+            while (!stale && in.readBoolean()) {
+                Key key = new Key(in.readLong(), in.readLong(), in.readUTF(), in.readUTF(), in.readInt(),
+                        in.readBoolean());
+                int size = in.readInt();
+                List<String> keywords = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    keywords.add(in.readUTF());
+                }
+                cache.put(key, Collections.unmodifiableList(keywords));
+                count++;
+            }
+        }
+        //文件关闭之后再删除
+        if (stale) {
+            LOG.info("keyword cache {} was saved with different rules, deleted.", source.getAbsolutePath());
+            Files.delete(source.toPath());
+            return;
+        }
+        LOG.info("{} cached keyword results loaded from {} in {} ms.", count, source.getAbsolutePath(),
+                System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,256 @@
+package ruc.irm.extractor.keyword;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import ruc.irm.extractor.commons.ChineseStopKeywords;
+import ruc.irm.extractor.commons.ChineseStopWords;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 关键词抽取使用的词语特征表，把停用词、关键词停用词和人工指定的权重合并到一张表中，
+ * 每个词语查找一次即可得到全部特征。
+ * <p>
+ * 特征表创建后不再修改，修改权重或者重新读取停用词表时创建新的特征表，
+ * 通过原子引用整体替换。读取时不加锁，一次抽取过程中应只调用一次get()，并始终使用同一个特征表。
+ * <p>
+ * 特征表使用开放寻址的散列表保存，每个词语的特征保存在并行数组的同一个槽位中：
+ * <pre>
+ * int slot = lexicon.find(word);   //不存在时为-1
+ * lexicon.isStopKeyword(slot); lexicon.getWeight(slot, 0.0f);
+ * </pre>
+ * 散列表中只有停用词和指定了权重的词语，修改已有词语的权重时只复制标记和权重数组，
+ * 出现新词语时重建散列表，代价与停用词和权重的数量成正比。
+ * 词向量下标不放入特征表，由词图在所用模型的VectorStore中直接查找，重新加载模型后不需要更新特征表。
+ *
+ * @author xiatian
+ */
+public final class Lexicon {
+    private static final byte STOP_WORD = 1;
+    private static final byte STOP_KEYWORD = 1 << 1;
+    private static final byte WEIGHTED = 1 << 2;
+
+    private static final AtomicReference<Lexicon> CURRENT = new AtomicReference<>();
+
+    /**
+     * 构建特征表的原始数据，重新构建时使用
+     */
+    private final Set<String> stopWords;
+    private final Set<String> stopKeywords;
+    private final Map<String, Float> specifiedWeights;
+
+    private final String[] keys;
+    private final byte[] flags;
+    private final float[] weights;
+    private final int mask;
+    private final int shift;
+
+    private volatile String fingerprint = null;
+
+    private Lexicon(Set<String> stopWords, Set<String> stopKeywords, Map<String, Float> specifiedWeights) {
+        this.stopWords = stopWords;
+        this.stopKeywords = stopKeywords;
+        this.specifiedWeights = specifiedWeights;
+
+        int expected = stopWords.size() + stopKeywords.size() + specifiedWeights.size();
+        //装载因子不超过0.5
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        this.keys = new String[capacity];
+        this.flags = new byte[capacity];
+        this.weights = new float[capacity];
+        this.mask = capacity - 1;
+        this.shift = 32 - Integer.numberOfTrailingZeros(capacity);
+
+        for (String word : stopWords) {
+            flags[insert(word)] |= STOP_WORD | STOP_KEYWORD;
+        }
+        for (String word : stopKeywords) {
+            flags[insert(word)] |= STOP_KEYWORD;
+        }
+        for (Map.Entry<String, Float> entry : specifiedWeights.entrySet()) {
+            int slot = insert(entry.getKey());
+            flags[slot] |= WEIGHTED;
+            weights[slot] = entry.getValue();
+        }
+    }
+
+    /**
+     * 与base使用相同的散列表，只替换标记和权重
+     */
+    private Lexicon(Lexicon base, Map<String, Float> specifiedWeights, byte[] flags, float[] weights) {
+        this.stopWords = base.stopWords;
+        this.stopKeywords = base.stopKeywords;
+        this.specifiedWeights = specifiedWeights;
+        this.keys = base.keys;
+        this.flags = flags;
+        this.weights = weights;
+        this.mask = base.mask;
+        this.shift = base.shift;
+    }
+
+    /**
+     * 返回词语所在的槽位，不存在时插入，只在构造时调用
+     */
+    private int insert(String word) {
+        int slot = word.hashCode() * 0x9E3779B9 >>> shift;
+        while (keys[slot] != null) {
+            if (keys[slot].equals(word)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = word;
+        return slot;
+    }
+
+    /**
+     * 查找词语所在的槽位，不存在时返回-1。返回的槽位只能用于当前特征表
+     */
+    public int find(String word) {
+        int slot = word.hashCode() * 0x9E3779B9 >>> shift;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (key.equals(word)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean isStopWord(int slot) {
+        return slot >= 0 && (flags[slot] & STOP_WORD) != 0;
+    }
+
+    /**
+     * 是否为不能作为关键词的词语，包括所有停用词
+     */
+    public boolean isStopKeyword(int slot) {
+        return slot >= 0 && (flags[slot] & STOP_KEYWORD) != 0;
+    }
+
+    /**
+     * 人工指定的权重，没有指定时返回defaultValue
+     */
+    public float getWeight(int slot, float defaultValue) {
+        return slot >= 0 && (flags[slot] & WEIGHTED) != 0 ? weights[slot] : defaultValue;
+    }
+
+    public boolean isStopWord(String word) {
+        return isStopWord(find(word));
+    }
+
+    public boolean isStopKeyword(String word) {
+        return isStopKeyword(find(word));
+    }
+
+    /**
+     * 两个特征表的停用词和人工指定的权重是否相同，即对抽取结果的影响是否相同
+     */
+    boolean hasSameRules(Lexicon other) {
+        return other != null && stopWords == other.stopWords && stopKeywords == other.stopKeywords
+                && specifiedWeights == other.specifiedWeights;
+    }
+
+    /**
+     * 停用词、关键词停用词和人工指定权重的内容散列值，内容相同时结果相同，用于识别不同进程中的相同规则
+     */
+    String fingerprint() {
+        String result = fingerprint;
+        if (result == null) {
+            Hasher hasher = Hashing.murmur3_128().newHasher();
+            putWords(hasher, stopWords);
+            putWords(hasher, stopKeywords);
+            for (Map.Entry<String, Float> entry : new TreeMap<>(specifiedWeights).entrySet()) {
+                hasher.putString(entry.getKey(), StandardCharsets.UTF_8).putFloat(entry.getValue());
+            }
+            result = hasher.hash().toString();
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    private static void putWords(Hasher hasher, Set<String> words) {
+        hasher.putInt(words.size());
+        for (String word : new TreeSet<>(words)) {
+            hasher.putString(word, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+    }
+
+    /**
+     * 当前的特征表，首次调用时读取停用词表
+     */
+    public static Lexicon get() {
+        Lexicon lexicon = CURRENT.get();
+        if (lexicon == null) {
+            synchronized (Lexicon.class) {
+                lexicon = CURRENT.get();
+                if (lexicon == null) {
+                    lexicon = new Lexicon(ChineseStopWords.read(), ChineseStopKeywords.read(),
+                            Collections.emptyMap());
+                    CURRENT.set(lexicon);
+                }
+            }
+        }
+        return lexicon;
+    }
+
+    /**
+     * 修改人工指定的权重，weight为null时删除该词语的权重
+     */
+    public static void setWeight(String word, Float weight) {
+        setWeights(Collections.singletonMap(word, weight));
+    }
+
+    /**
+     * 批量修改人工指定的权重，只创建一次新的特征表，读入大量权重时应使用该方法。值为null时删除对应词语的权重。
+     * 修改的词语都已在散列表中时只复制标记和权重数组，否则重建散列表
+     */
+    public static synchronized void setWeights(Map<String, Float> changes) {
+        Lexicon lexicon = get();
+        Map<String, Float> weights = new HashMap<>(lexicon.specifiedWeights);
+        boolean rebuild = false;
+        for (Map.Entry<String, Float> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                weights.remove(entry.getKey());
+            } else {
+                weights.put(entry.getKey(), entry.getValue());
+                rebuild |= lexicon.find(entry.getKey()) < 0;
+            }
+        }
+
+        if (rebuild) {
+            CURRENT.set(new Lexicon(lexicon.stopWords, lexicon.stopKeywords,
+                    Collections.unmodifiableMap(weights)));
+            return;
+        }
+
+        byte[] flags = lexicon.flags.clone();
+        float[] values = lexicon.weights.clone();
+        for (Map.Entry<String, Float> entry : changes.entrySet()) {
+            int slot = lexicon.find(entry.getKey());
+            if (slot < 0) {
+                continue;
+            }
+            if (entry.getValue() == null) {
+                flags[slot] &= ~WEIGHTED;
+                values[slot] = 0;
+            } else {
+                flags[slot] |= WEIGHTED;
+                values[slot] = entry.getValue();
+            }
+        }
+        CURRENT.set(new Lexicon(lexicon, Collections.unmodifiableMap(weights), flags, values));
+    }
+
+    /**
+     * 重新读取停用词表，保留人工指定的权重
+     */
+    public static synchronized void reload() {
+        Lexicon lexicon = get();
+        CURRENT.set(new Lexicon(ChineseStopWords.read(), ChineseStopKeywords.read(),
+                lexicon.specifiedWeights));
+    }
+}
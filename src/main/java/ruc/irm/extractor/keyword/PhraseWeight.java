@@ -1,30 +1,34 @@
 package ruc.irm.extractor.keyword;
 
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * 词语的全局权重，例如，根据DF的差异为不同词语赋予不同权重
  * <p/>
+ * 权重保存在Lexicon中，每次修改都会创建新的特征表，批量修改时请使用setWeights
+ * <p/>
  * User: xiatian
  * Date: 4/2/13 2:44 PM
  */
 public class PhraseWeight {
-    private static Map<String, Float> phrases = new HashMap<String, Float>();
 
     public static final void setWeight(String phrase, float weight) {
-        phrases.put(phrase, weight);
+        Lexicon.setWeight(phrase, weight);
+    }
+
+    /**
+     * 批量设置权重，只创建一次新的特征表
+     */
+    public static final void setWeights(Map<String, Float> weights) {
+        Lexicon.setWeights(weights);
     }
 
     public static final void delete(String phrase) {
-        phrases.remove(phrase);
+        Lexicon.setWeight(phrase, null);
     }
 
     public static float getWeight(String phrase, float defaultValue) {
-        if (phrases.containsKey(phrase)) {
-            return phrases.get(phrase);
-        } else {
-            return defaultValue;
-        }
+        Lexicon lexicon = Lexicon.get();
+        return lexicon.getWeight(lexicon.find(phrase), defaultValue);
     }
 }
@@ -0,0 +1,28 @@
+package ruc.irm.extractor.keyword;
+
+import ruc.irm.extractor.keyword.divrank.DivRankGraph;
+import ruc.irm.extractor.keyword.graph.PageRankGraph;
+
+/**
+ * 词图上的排序算法，同一个转移矩阵可以分别使用不同的算法计算词语得分
+ */
+public enum RankAlgorithm {
+    PageRank {
+        @Override
+        public RankGraph create(String[] labels, double[] distributionOnV, double[][] matrix) {
+            return new PageRankGraph(labels, distributionOnV, matrix);
+        }
+    },
+
+    DivRank {
+        @Override
+        public RankGraph create(String[] labels, double[] distributionOnV, double[][] matrix) {
+            return new DivRankGraph(labels, distributionOnV, matrix);
+        }
+    };
+
+    /**
+     * 使用给定的标签、偏好向量和转移矩阵创建用于迭代计算的图
+     */
+    public abstract RankGraph create(String[] labels, double[] distributionOnV, double[][] matrix);
+}
@@ -7,11 +7,17 @@ import com.hankcs.hanlp.HanLP;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zhinang.conf.Configuration;
+import ruc.irm.extractor.algorithm.ModelRegistry;
+import ruc.irm.extractor.algorithm.Word2Vec;
 import ruc.irm.extractor.commons.ExtractConf;
 import ruc.irm.extractor.keyword.divrank.PositionWordDivGraph;
 import ruc.irm.extractor.keyword.graph.EmbeddingWordGraph;
+import ruc.irm.extractor.keyword.graph.GraphMemoryGuard;
 import ruc.irm.extractor.keyword.graph.PositionWordGraph;
 import ruc.irm.extractor.keyword.graph.WordGraph;
+import ruc.irm.extractor.nlp.LanguageDetector;
+import ruc.irm.extractor.nlp.LanguageDetector.Language;
+import ruc.irm.extractor.nlp.Segment;
 import ruc.irm.extractor.nlp.SegmentFactory;
 
 import java.io.IOException;
@@ -19,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Automatic keyword extractor interface.
@@ -38,6 +45,7 @@ public class TextRankExtractor implements KeywordExtractor {
     private int maxReadWordCount = 2000;
     private boolean useHanlpMethod = true;
     private boolean mergeNeighbor = true;
+    private boolean detectLanguage = true;
 
     public enum GraphType {
         TextRank, //传统的TextRank方法
@@ -51,6 +59,16 @@ public class TextRankExtractor implements KeywordExtractor {
 
     private GraphType graphType;
 
+    /**
+     * 按照配置文件设置的默认参数
+     */
+    private final ExtractOptions options;
+
+    /**
+     * 构建转移矩阵时的内存预算
+     */
+    private final GraphMemoryGuard memoryGuard;
+
     private Configuration conf = null;
 
     public TextRankExtractor(GraphType type) {
@@ -69,7 +87,47 @@ public class TextRankExtractor implements KeywordExtractor {
         this.lambda = this.conf.getFloat("extractor.keyword.lambda", 30.0f);
 
         this.mergeNeighbor = this.conf.getBoolean("extractor.keyword.merge.neighbor", false);
+        this.detectLanguage = this.conf.getBoolean("extractor.keyword.detect.language", true);
         this.graphType = type;
+        //是否合并相邻词语(短语)来自配置文件；读入的词语数量默认为0，即沿用词图自身的默认数量，
+        //单次请求可以通过withMaxWords和withPhrase修改
+        this.options = new ExtractOptions(type, null, lambda, 0, 20, 0.85f, 10, mergeNeighbor);
+        this.memoryGuard = new GraphMemoryGuard(this.conf);
+
+        //使用词向量的方法在创建时开始后台加载模型，加载完成之前使用不依赖词向量的词图
+        if (graphType == GraphType.NingJianfei) {
+            preloadModel();
+        }
+    }
+
+    /**
+     * 在后台加载默认的词向量模型。
+     * 服务可以按请求切换到使用词向量的词图，应在启动时调用，避免第一批请求得到不使用词向量的结果
+     *
+     * @return 模型加载完成之后结束
+     */
+    public static CompletableFuture<Word2Vec> preloadModel() {
+        return ModelRegistry.preload(ModelRegistry.getDefaultPath());
+    }
+
+    public GraphType getGraphType() {
+        return graphType;
+    }
+
+    /**
+     * 按照配置文件设置的默认参数，可以在此基础上修改部分参数后传给extract
+     */
+    public ExtractOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 影响抽取结果的参数，与词图类型一起用于区分缓存的抽取结果
+     */
+    String parameterSignature() {
+        return "alpha=" + alpha + ",beta=" + beta + ",gamma=" + gamma
+                + ",hanlp=" + useHanlpMethod + ",merge=" + mergeNeighbor + ",detect=" + detectLanguage
+                + "," + memoryGuard;
     }
 
     /**
@@ -79,29 +137,141 @@ public class TextRankExtractor implements KeywordExtractor {
      * @param weight
      */
     public static void setSpecifiedWordWeight(String word, String pos, float weight) {
-        PhraseWeight.setWeight(word, weight);
+        Lexicon.setWeight(word, weight);
 
         //同时插入分词程序
         SegmentFactory.getSegment(ExtractConf.create()).insertUserDefinedWord(word, pos, 10);
     }
 
-    public List<String> extractAsList(String title, String content, int topN) {
+    /**
+     * 批量设置人工指定的权重，只创建一次新的特征表
+     *
+     * @param weights 词语及其权重
+     * @param pos     插入分词程序时使用的词性
+     */
+    public static void setSpecifiedWordWeights(Map<String, Float> weights, String pos) {
+        Lexicon.setWeights(weights);
+
+        Segment segment = SegmentFactory.getSegment(ExtractConf.create());
+        for (Map.Entry<String, Float> entry : weights.entrySet()) {
+            if (entry.getValue() != null) {
+                segment.insertUserDefinedWord(entry.getKey(), pos, 10);
+            }
+        }
+    }
+
+    /**
+     * 根据词图类型创建词图，并使用与文本语言对应的分词程序读入标题和正文
+     */
+    private WordGraph buildWordGraph(String title, String content) {
+        return buildWordGraph(title, content, options);
+    }
+
+    /**
+     * 按照指定的参数构建词图
+     */
+    WordGraph buildWordGraph(String title, String content, ExtractOptions options) {
+        WordGraph wordGraph = createWordGraph(title, content, options);
+        wordGraph.build(title, options.getLambda());
+        wordGraph.build(content, 1.0f);
+        return wordGraph;
+    }
+
+    private WordGraph createWordGraph(String title, String content) {
+        return createWordGraph(title, content, options);
+    }
+
+    /**
+     * 根据词图类型创建空的词图，按照参数设置读入的最大词语数量，并设置与文本语言对应的分词程序
+     */
+    private WordGraph createWordGraph(String title, String content, ExtractOptions options) {
         //use improved text rank method proposed by xiatian
         WordGraph wordGraph = null;
+        GraphType type = options.getGraphType();
+        float[] w = options.weights() != null ? options.weights() : defaultWeights(type);
 
-        if (graphType == GraphType.TextRank) {
-            wordGraph = new PositionWordGraph(1, 0, 0, true);
-        } else if (graphType == GraphType.PositionRank) {
-            wordGraph = new PositionWordGraph(0.33f, 0.34f, 0.33f, true);
-        } else if (graphType == GraphType.NingJianfei) {
-            wordGraph = new EmbeddingWordGraph(alpha, beta, gamma, true);
-        } else if (graphType == GraphType.PositionDivRank) {
-            wordGraph = new PositionWordDivGraph(0.33f, 0.34f, 0.33f, true);
+        if (type == GraphType.NingJianfei) {
+            wordGraph = new EmbeddingWordGraph(w[0], w[1], w[2], true);
+        } else if (type == GraphType.PositionDivRank) {
+            wordGraph = new PositionWordDivGraph(w[0], w[1], w[2], true);
         } else {
-            wordGraph = new PositionWordGraph(0.33f, 0.34f, 0.33f, true);
+            wordGraph = new PositionWordGraph(w[0], w[1], w[2], true);
         }
-        wordGraph.build(title, lambda);
-        wordGraph.build(content, 1.0f);
+
+        wordGraph.setMemoryGuard(memoryGuard);
+        if (options.getMaxWords() > 0) {
+            wordGraph.setMaxReadableWordCount(options.getMaxWords());
+        }
+
+        if (detectLanguage) {
+            Language language = LanguageDetector.detect(content == null || content.isEmpty() ? title : content);
+            if (language != Language.ZH) {
+                wordGraph.setSegment(SegmentFactory.getLuceneSegment(conf, language.getCode()));
+            }
+        }
+        return wordGraph;
+    }
+
+    /**
+     * 词图类型默认的词语覆盖、位置和频度影响力因子
+     */
+    private float[] defaultWeights(GraphType type) {
+        if (type == GraphType.TextRank) {
+            return new float[]{1, 0, 0};
+        } else if (type == GraphType.NingJianfei) {
+            return new float[]{alpha, beta, gamma};
+        } else {
+            return new float[]{0.33f, 0.34f, 0.33f};
+        }
+    }
+
+    /**
+     * 按照单次请求的参数抽取关键词，参数中的词图类型、权重等覆盖抽取程序的默认设置，
+     * 不同参数的请求可以共用同一个抽取程序
+     *
+     * @param title
+     * @param content
+     * @param options 通过getOptions()修改得到的参数
+     * @return
+     */
+    public List<String> extract(String title, String content, ExtractOptions options) {
+        WordGraph wordGraph = buildWordGraph(title, content, options);
+
+        return wordGraph.findTopKeywords(options.getTopN(), options.isPhrase(), options.getIterations(),
+                options.getDampFactor());
+    }
+
+    /**
+     * 对文档进行一次切分，同时得到词性标记结果、命名实体和关键词。
+     * <p>
+     * 标题和正文各切分一次，切分结果直接用于构建词图，不再分别调用tag、findEntities和extractAsList。
+     * 词图的参数与extractAsList相同，由于切分时启用了实体识别，关键词结果可能与extractAsList略有差别。
+     *
+     * @param title
+     * @param content
+     * @param topN
+     * @return
+     */
+    public DocumentAnalysis analyze(String title, String content, int topN) {
+        WordGraph wordGraph = createWordGraph(title, content);
+        Segment segment = wordGraph.getSegment();
+
+        Segment.Analysis titleAnalysis = segment.analyze(title, false);
+        Segment.Analysis contentAnalysis = segment.analyze(content, false);
+
+        wordGraph.build(titleAnalysis.getWords(), options.getLambda());
+        wordGraph.build(contentAnalysis.getWords(), 1.0f);
+
+        Segment.Entities entities = new Segment.Entities(false);
+        entities.addAll(titleAnalysis.getEntities());
+        entities.addAll(contentAnalysis.getEntities());
+
+        return new DocumentAnalysis(titleAnalysis.getWords(), contentAnalysis.getWords(), entities,
+                wordGraph.findTopKeywords(topN, false, options.getIterations(), options.getDampFactor()));
+    }
+
+    public List<String> extractAsList(String title, String content, int topN) {
+        WordGraph wordGraph = buildWordGraph(title, content);
 //
 //            RankGraph g = wordGraph.makeRankGraph();
 //            g.iterateCalculation(20, 0.85f);
@@ -149,26 +319,40 @@ public class TextRankExtractor implements KeywordExtractor {
     }
 
     public List<String> extractPhraseAsList(String title, String content, int topN) {
-        //use improved text rank method proposed by xiatian
-        WordGraph wordGraph = null;
-
-        if (graphType == GraphType.TextRank) {
-            wordGraph = new PositionWordGraph(1, 0, 0, true);
-        } else if (graphType == GraphType.PositionRank) {
-            wordGraph = new PositionWordGraph(0.33f, 0.34f, 0.33f, true);
-        } else if (graphType == GraphType.NingJianfei) {
-            wordGraph = new EmbeddingWordGraph(alpha, beta, gamma, true);
-        } else if (graphType == GraphType.PositionDivRank) {
-            wordGraph = new PositionWordDivGraph(0.33f, 0.34f, 0.33f, true);
-        } else {
-            wordGraph = new PositionWordGraph(0.33f, 0.34f, 0.33f, true);
-        }
-        wordGraph.build(title, lambda);
-        wordGraph.build(content, 1.0f);
+        WordGraph wordGraph = buildWordGraph(title, content);
 
         return wordGraph.findTopKeywords(topN, true);
     }
 
+    /**
+     * 使用多种排序算法抽取关键词，文本只切分一次，词图和转移矩阵只构建一次，按照算法返回各自的关键词。
+     * 例如PositionRank词图上同时计算PageRank和DivRank，结果分别与PositionRank和PositionDivRank一致
+     *
+     * @param title
+     * @param content
+     * @param topN
+     * @param algorithms 排序算法
+     * @return
+     */
+    public Map<RankAlgorithm, List<String>> extractAsMap(String title, String content, int topN,
+                                                         RankAlgorithm... algorithms) {
+        return extractAsMap(title, content, options.withTopN(topN).withPhrase(false), algorithms);
+    }
+
+    /**
+     * 按照单次请求的参数使用多种排序算法抽取关键词，各算法使用参数中的迭代次数和阻尼系数
+     *
+     * @param options    通过getOptions()修改得到的参数
+     * @param algorithms 排序算法
+     */
+    public Map<RankAlgorithm, List<String>> extractAsMap(String title, String content, ExtractOptions options,
+                                                         RankAlgorithm... algorithms) {
+        WordGraph wordGraph = buildWordGraph(title, content, options);
+
+        return wordGraph.findTopKeywords(options.getTopN(), options.isPhrase(), options.getIterations(),
+                options.getDampFactor(), algorithms);
+    }
+
     /**
      * 合并词语current相邻的词语
      *
@@ -2,9 +2,6 @@ package ruc.irm.extractor.keyword.divrank;
 
 import ruc.irm.extractor.keyword.RankGraph;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * DivRank: the Interplay of Prestige and Diversity in Information Networks
  * <p/>
@@ -35,27 +32,18 @@ public class DivRankGraph extends RankGraph {
         return sum;
     }
 
-    private Map<String, Double> weightCache = new HashMap<>();
-
     /**
      * 点态估计当前时刻的转移概率
      *
      * @param from
      * @param to
+     * @param D    from的D_T值
      * @return
      */
-    private double dynamicEdgeWeight(int from, int to) {
-        String key = from + "-" + to;
-        if(weightCache.containsKey(key)) {
-            return weightCache.get(key);
-        } else {
-            double lambda = 0.85;
-            double p0 = edgeWeight(from, to);
-            double D = DT(from);
-            double value = (1 - lambda) * distributionOnV[to] + lambda * p0 * V[to] / D;
-            weightCache.put(key, value);
-            return value;
-        }
+    private double dynamicEdgeWeight(int from, int to, double D) {
+        double lambda = 0.85;
+        double p0 = edgeWeight(from, to);
+        return (1 - lambda) * distributionOnV[to] + lambda * p0 * V[to] / D;
     }
 
     /**
@@ -67,20 +55,34 @@ public class DivRankGraph extends RankGraph {
     public void iterateCalculation(int iterateCount, double dumpFactor) {
         double[] nextTimeV = new double[V.length];
 
+        //每个节点的D_T值，每次迭代开始时计算一次，每个节点的转移概率都使用同一行的缓存值，
+        //内存与节点数量成正比，避免对每一对节点重复计算D_T
+        double[] dt = new double[V.length];
+
         int iterators = 0;
         while (iterators++ < iterateCount) {
-            //清空缓存
-            weightCache.clear();
+            for (int u = 0; u < V.length; u++) {
+                dt[u] = DT(u);
+            }
 
             for (int i = 0; i < V.length; i++) {
                 double accumulate = 0;
                 for (int j = 0; j < V.length; j++) {
                     //accumulate += edgeWeight(j, i) * V[j];
-                    accumulate += dynamicEdgeWeight(j, i) * V[j];
+                    accumulate += dynamicEdgeWeight(j, i, dt[j]) * V[j];
                 }
 
                 //nextTimeV[i] = (1 - dumpFactor) * distributionOnV[i] + dumpFactor * accumulate;
+                double previous = V[i];
                 nextTimeV[i] = accumulate;
+
+                //第一次迭代之后V与nextTimeV为同一个数组，V[i]已经更新，按照变化量修正各节点的D_T
+                if (nextTimeV == V && accumulate != previous) {
+                    double delta = accumulate - previous;
+                    for (int u = 0; u < V.length; u++) {
+                        dt[u] += edgeWeight(u, i) * delta;
+                    }
+                }
             }
 
             V = nextTimeV;
@@ -1,6 +1,7 @@
 package ruc.irm.extractor.keyword.divrank;
 
 import ruc.irm.extractor.keyword.RankGraph;
+import ruc.irm.extractor.keyword.graph.GraphMemoryGuard;
 import ruc.irm.extractor.keyword.graph.PageRankGraph;
 import ruc.irm.extractor.keyword.graph.WordGraph;
 import ruc.irm.extractor.keyword.graph.WordNode;
@@ -38,6 +39,14 @@ public class PositionWordDivGraph extends WordGraph {
         this.linkBack = linkBack;
     }
 
+    /**
+     * 稠密矩阵之外，DivRank迭代时缓存每个节点的D_T值
+     */
+    @Override
+    protected long estimateRankBytes(int words) {
+        return GraphMemoryGuard.estimateDenseBytes(words) + GraphMemoryGuard.estimateDivRankBytes(words);
+    }
+
     @Override
     public RankGraph makeRankGraph() {
         final String[] words = new String[wordNodeMap.size()];
@@ -1,7 +1,10 @@
 package ruc.irm.extractor.keyword.graph;
 
+import ruc.irm.extractor.algorithm.ModelRegistry;
 import ruc.irm.extractor.algorithm.Word2Vec;
+import ruc.irm.extractor.util.MathUtil;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -23,7 +26,8 @@ public class EmbeddingWordGraph extends WordGraph {
 
     public EmbeddingWordGraph() {
         super();
-        this.word2Vec = Word2Vec.getInstance("./word2vec.bin");
+        //模型尚未加载完成时为null，此时相邻词语的相似度按照相等处理
+        this.word2Vec = ModelRegistry.getDefault();
     }
 
     public EmbeddingWordGraph(float paramAlpha, float paramBeta, float paramGamma, boolean linkBack) {
@@ -36,27 +40,33 @@ public class EmbeddingWordGraph extends WordGraph {
     }
 
     /**
-     * 计算词图节点两两之间的word2vec相似度，保存到二维数组中
-     * @return
+     * 使用指定的词向量模型，如量化后的模型
      */
-    private float[][] word2vecSimMatrix(String[] words) {
-        float[][] matrix = new float[words.length][words.length];
-        for(int i=0; i<words.length; i++) {
-            matrix[i][i] = 0;
-            for(int j=i+1; j<words.length; j++) {
-                float sim = word2Vec.similarity(words[i], words[j]);
-                if(sim==0) {
-                    sim = 1.0f/words.length;
-                }
+    public EmbeddingWordGraph(Word2Vec word2Vec, float paramAlpha, float paramBeta, float paramGamma, boolean linkBack) {
+        super();
+        this.word2Vec = word2Vec;
 
-                matrix[i][j] = sim;
-                matrix[j][i] = sim;
-            }
-        }
+        this.paramAlpha = paramAlpha;
+        this.paramBeta = paramBeta;
+        this.paramGamma = paramGamma;
+        this.linkBack = linkBack;
+    }
 
-        return matrix;
+    /**
+     * 是否使用了词向量，模型尚未就绪时退化为不使用词向量的词图
+     */
+    public boolean isEmbeddingUsed() {
+        return word2Vec != null;
     }
 
+    /**
+     * 稠密矩阵之外，构建矩阵时复制了文档中所有词语的词向量
+     */
+    @Override
+    protected long estimateRankBytes(int words) {
+        return GraphMemoryGuard.estimateDenseBytes(words)
+                + GraphMemoryGuard.estimateEmbeddingBytes(words, word2Vec == null ? 0 : word2Vec.getSize());
+    }
 
     @Override
     public PageRankGraph makeRankGraph() {
@@ -64,14 +74,23 @@ public class EmbeddingWordGraph extends WordGraph {
         double[] values = new double[wordNodeMap.size()];
         final double[][] matrix = new double[wordNodeMap.size()][wordNodeMap.size()];
 
+        final Map<String, Integer> positions = new HashMap<>(wordNodeMap.size() * 4 / 3 + 1);
+
         int i = 0;
         double defaultValue = 1.0f / wordNodeMap.size();
         for (Map.Entry<String, WordNode> entry : wordNodeMap.entrySet()) {
             words[i] = entry.getKey();
             values[i] = defaultValue;
+            positions.put(words[i], i);
             i++;
         }
 
+        //文档中所有词语的词向量一次复制到连续的数组中，按照下标计算相邻词语之间的相似度，
+        //rowSimilarities[j]为当前词语与相邻词语j的相似度
+        final int dimension = word2Vec == null ? 0 : word2Vec.getSize();
+        final float[] vectors = word2Vec == null ? null : word2Vec.gatherVectors(embeddingRows(words, word2Vec));
+        final float[] rowSimilarities = new float[words.length];
+
 //        float[][] simMatrix = word2vecSimMatrix(words);
 //        float[] word2vecScores = new float[words.length];
 //        float word2vecTotalScore = 0;
@@ -102,7 +121,9 @@ public class EmbeddingWordGraph extends WordGraph {
                 totalImportance += wordNodeMap.get(w).getImportance();
                 totalOccurred += wordNodeMap.get(w).getCount();
 
-                totalWord2VecScore += word2Vec.similarity(wordFrom, w);
+                int j = positions.get(w);
+                rowSimilarities[j] = vectors == null ? 1.0f : MathUtil.dot(vectors, i * dimension, j * dimension, dimension);
+                totalWord2VecScore += rowSimilarities[j];
             }
 
             for (int j = 0; j < words.length; j++) {
@@ -117,7 +138,7 @@ public class EmbeddingWordGraph extends WordGraph {
                     //double partC = nodeTo.getCount() * 1.0f / totalOccurred;
 
                     //double partD = word2vecScores[j]/word2vecTotalScore;
-                    float partD = word2Vec.similarity(wordFrom, wordTo)/totalWord2VecScore;
+                    float partD = rowSimilarities[j]/totalWord2VecScore;
 
                     //double sim = word2Vec.similarity(wordFrom, wordTo);
 
@@ -0,0 +1,240 @@
+package ruc.irm.extractor.keyword.graph;
+
+import org.zhinang.conf.Configuration;
+import ruc.irm.extractor.commons.ExtractConf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntToLongFunction;
+
+/**
+ * 单次抽取时词图和转移矩阵的内存预算。
+ * <p>
+ * 转移矩阵为N×N的double[][]，放宽了读入词语数量且词语种类很多的长文档可能一次分配数百MB，引起长时间的GC停顿。
+ * 构建转移矩阵之前按照节点和邻接关系的数量估计词图和矩阵占用的内存，超过预算时依次尝试。
+ * 矩阵之外的分配与词图类型有关(如EmbeddingWordGraph复制的词向量)，由WordGraph.estimateRankBytes按照类型估计：
+ * <ol>
+ *     <li>sparse: 支持稀疏矩阵的词图(如PositionWordGraph)改用SparsePageRankGraph，计算结果与稠密矩阵相同</li>
+ *     <li>prune: 按照词频与节点重要性的乘积只保留排在前面的候选词语，使词图和稠密矩阵不超过预算</li>
+ *     <li>拒绝本次请求，抛出BudgetExceededException</li>
+ * </ol>
+ * 支持如下参数：
+ * <ul>
+ *     <li>extractor.graph.memory.budget: 单次抽取时词图和转移矩阵占用内存的上限(字节)，默认为64MB</li>
+ *     <li>extractor.graph.memory.policy: 超过预算时的处理方式，sparse(默认，依次尝试稀疏矩阵和裁剪)、
+ *     prune(只裁剪)或reject(直接拒绝)</li>
+ *     <li>extractor.graph.memory.min.words: 裁剪后至少保留的词语数量，不足时拒绝，默认为100</li>
+ * </ul>
+ * 每种处理方式的次数和估计分配的内存通过getStats()得到，所有实例共享同一组计数。
+ *
+ * @author xiatian
+ */
+public final class GraphMemoryGuard {
+    public enum Policy {SPARSE, PRUNE, REJECT}
+
+    /**
+     * 词图和转移矩阵超过内存预算，并且不能通过稀疏矩阵或裁剪降到预算之内
+     */
+    public static class BudgetExceededException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        public BudgetExceededException(int words, long estimatedBytes, long budget) {
+            super("文档包含" + words + "个不同的候选词语，词图和转移矩阵预计占用" + (estimatedBytes >> 20)
+                    + "MB内存，超过了" + (budget >> 20) + "MB的上限(extractor.graph.memory.budget)，请缩短文档或减少读入的词语数量");
+        }
+    }
+
+    //每个节点：WordNode、三个HashMap、词语字符串以及在wordNodeMap中的条目
+    private static final long NODE_BYTES = 256;
+
+    //每条邻接关系：HashMap的条目、桶数组中的位置和计数
+    private static final long ENTRY_BYTES = 48;
+
+    private static final AtomicLong DENSE = new AtomicLong();
+    private static final AtomicLong SPARSE = new AtomicLong();
+    private static final AtomicLong PRUNED = new AtomicLong();
+    private static final AtomicLong REJECTED = new AtomicLong();
+    private static final AtomicLong ALLOCATED_BYTES = new AtomicLong();
+    private static final AtomicLong MAX_BYTES = new AtomicLong();
+
+    private static volatile GraphMemoryGuard defaultGuard = null;
+
+    private final long budget;
+    private final Policy policy;
+    private final int minWords;
+
+    public GraphMemoryGuard(Configuration conf) {
+        this(conf.getLong("extractor.graph.memory.budget", 64L << 20),
+                Policy.valueOf(conf.get("extractor.graph.memory.policy", "sparse").trim().toUpperCase()),
+                conf.getInt("extractor.graph.memory.min.words", 100));
+    }
+
+    public GraphMemoryGuard(long budget, Policy policy, int minWords) {
+        this.budget = budget;
+        this.policy = policy;
+        this.minWords = minWords;
+    }
+
+    /**
+     * 按照ExtractConf中的配置创建的默认预算，词图没有单独指定时使用
+     */
+    public static GraphMemoryGuard getDefault() {
+        if (defaultGuard == null) {
+            synchronized (GraphMemoryGuard.class) {
+                if (defaultGuard == null) {
+                    defaultGuard = new GraphMemoryGuard(ExtractConf.create());
+                }
+            }
+        }
+        return defaultGuard;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getMinWords() {
+        return minWords;
+    }
+
+    /**
+     * 词图本身占用的内存
+     *
+     * @param words   节点数量
+     * @param entries 邻接词语和左右相邻词语的条目总数
+     */
+    public static long estimateGraphBytes(int words, long entries) {
+        return words * NODE_BYTES + entries * ENTRY_BYTES;
+    }
+
+    /**
+     * 稠密转移矩阵以及标签、初始向量等数组占用的内存
+     */
+    public static long estimateDenseBytes(int words) {
+        long n = words;
+        return 16 + 4 * n + n * (16 + 8 * n) + vectorBytes(n);
+    }
+
+    /**
+     * 稀疏转移矩阵以及标签、初始向量、词语下标表等占用的内存
+     *
+     * @param words 节点数量
+     * @param edges 非零元素的数量，即邻接关系的数量
+     */
+    public static long estimateSparseBytes(int words, long edges) {
+        long n = words;
+        return 16 + 4 * (n + 1) + 32 + 12 * edges + vectorBytes(n) + 48 * n;
+    }
+
+    /**
+     * 词向量词图在稠密矩阵之外复制的词向量、相似度数组和词语下标表占用的内存
+     *
+     * @param words     节点数量
+     * @param dimension 词向量的维数
+     */
+    public static long estimateEmbeddingBytes(int words, int dimension) {
+        long n = words;
+        return 16 + 4 * n * dimension + 16 + 4 * n + 16 + 4 * n + 64 * n;
+    }
+
+    /**
+     * DivRank迭代时缓存每个节点D_T值的数组占用的内存
+     */
+    public static long estimateDivRankBytes(int words) {
+        return 16 + 8L * words;
+    }
+
+    /**
+     * 在同一个转移矩阵上再运行一种排序算法时另外分配的标签副本、得分向量和DivRank的D_T缓存
+     */
+    public static long estimateAlgorithmBytes(int words) {
+        long n = words;
+        return 16 + 4 * n + 2 * (16 + 8 * n) + estimateDivRankBytes(words);
+    }
+
+    //标签、初始值、偏好向量和迭代用的数组
+    private static long vectorBytes(long n) {
+        return 16 + 4 * n + 3 * (16 + 8 * n);
+    }
+
+    boolean fits(long bytes) {
+        return bytes <= budget;
+    }
+
+    boolean allowsSparse() {
+        return policy == Policy.SPARSE;
+    }
+
+    boolean allowsPrune() {
+        return policy != Policy.REJECT;
+    }
+
+    /**
+     * 裁剪后最多保留的词语数量：词图按照节点比例缩小后，与迭代计算占用的内存之和不超过预算
+     *
+     * @param words      裁剪前的节点数量
+     * @param graphBytes 裁剪前词图占用的内存
+     * @param rankBytes  按照节点数量估计迭代计算占用的内存，包括稠密矩阵
+     */
+    int maxDenseWords(int words, long graphBytes, IntToLongFunction rankBytes) {
+        int low = 0;
+        int high = words;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (graphBytes * mid / words + rankBytes.applyAsLong(mid) <= budget) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    void recordDense(long bytes) {
+        DENSE.incrementAndGet();
+        record(bytes);
+    }
+
+    void recordSparse(long bytes) {
+        SPARSE.incrementAndGet();
+        record(bytes);
+    }
+
+    void recordPruned(long bytes) {
+        PRUNED.incrementAndGet();
+        record(bytes);
+    }
+
+    void recordRejected() {
+        REJECTED.incrementAndGet();
+    }
+
+    private static void record(long bytes) {
+        ALLOCATED_BYTES.addAndGet(bytes);
+        MAX_BYTES.accumulateAndGet(bytes, Math::max);
+    }
+
+    /**
+     * 各种处理方式的请求次数，以及转移矩阵估计分配的内存总量和单次请求的最大值(字节)
+     */
+    public static Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("dense", DENSE.get());
+        stats.put("sparse", SPARSE.get());
+        stats.put("pruned", PRUNED.get());
+        stats.put("rejected", REJECTED.get());
+        stats.put("allocatedBytes", ALLOCATED_BYTES.get());
+        stats.put("maxRequestBytes", MAX_BYTES.get());
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return "budget=" + budget + ",policy=" + policy + ",minWords=" + minWords;
+    }
+}
@@ -70,11 +70,8 @@ public class PositionWordGraph extends WordGraph {
 
                 if (adjacentWords.containsKey(wordTo)) {
                     //计算i到j的转移概率
-                    double partA = 1.0f / adjacentWords.size();
-                    double partB = nodeTo.getImportance() / totalImportance;
-                    double partC = nodeTo.getCount() * 1.0f / totalOccurred;
                     //matrix[j][i] = 0.33 * paramAlpha + 0.34 * paramBeta + 0.33 * paramGamma;
-                    matrix[j][i] = partA * paramAlpha + partB * paramBeta + partC * paramGamma;
+                    matrix[j][i] = transition(nodeTo, adjacentWords.size(), totalImportance, totalOccurred);
                 }
             }
         }
@@ -82,4 +79,71 @@ public class PositionWordGraph extends WordGraph {
         return new PageRankGraph(words, values, matrix);
     }
 
+    /**
+     * 从有adjacentCount个相邻节点的词语转移到nodeTo的概率
+     */
+    private double transition(WordNode nodeTo, int adjacentCount, float totalImportance, int totalOccurred) {
+        double partA = 1.0f / adjacentCount;
+        double partB = nodeTo.getImportance() / totalImportance;
+        double partC = nodeTo.getCount() * 1.0f / totalOccurred;
+        return partA * paramAlpha + partB * paramBeta + partC * paramGamma;
+    }
+
+    /**
+     * 只保存相邻词语之间的转移概率，内存与邻接关系的数量成正比
+     */
+    @Override
+    protected SparsePageRankGraph makeSparseRankGraph() {
+        final int n = wordNodeMap.size();
+        final String[] words = new String[n];
+        final WordNode[] nodes = new WordNode[n];
+        double[] values = new double[n];
+        final Map<String, Integer> positions = new HashMap<>(n * 4 / 3 + 1);
+
+        int i = 0;
+        double defaultValue = 1.0f / n;
+        for (Map.Entry<String, WordNode> entry : wordNodeMap.entrySet()) {
+            words[i] = entry.getKey();
+            nodes[i] = entry.getValue();
+            values[i] = defaultValue;
+            positions.put(words[i], i);
+            i++;
+        }
+
+        //offsets[j+1]先统计指向节点j的边数，再累加为每个节点的起始位置
+        int[] offsets = new int[n + 1];
+        for (i = 0; i < n; i++) {
+            for (String w : nodes[i].getAdjacentWords().keySet()) {
+                offsets[positions.get(w) + 1]++;
+            }
+        }
+        for (i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        //按照来源节点的下标从小到大填入，与稠密矩阵的累加顺序一致
+        int[] sources = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (i = 0; i < n; i++) {
+            Map<String, Integer> adjacentWords = nodes[i].getAdjacentWords();
+
+            float totalImportance = 0.0f;    //相邻节点的节点重要性之和
+            int totalOccurred = 0;       //相邻节点出现的总频度
+            for (String w : adjacentWords.keySet()) {
+                totalImportance += wordNodeMap.get(w).getImportance();
+                totalOccurred += wordNodeMap.get(w).getCount();
+            }
+
+            for (String w : adjacentWords.keySet()) {
+                int j = positions.get(w);
+                sources[next[j]] = i;
+                weights[next[j]++] = transition(wordNodeMap.get(w), adjacentWords.size(), totalImportance,
+                        totalOccurred);
+            }
+        }
+
+        return new SparsePageRankGraph(words, values, offsets, sources, weights);
+    }
+
 }
@@ -1,7 +1,10 @@
 package ruc.irm.extractor.keyword.graph;
 
+import ruc.irm.extractor.algorithm.ModelRegistry;
 import ruc.irm.extractor.algorithm.Word2Vec;
+import ruc.irm.extractor.util.MathUtil;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -25,7 +28,8 @@ public class SimWordGraph extends WordGraph {
 
     public SimWordGraph() {
         super();
-        this.word2Vec = Word2Vec.getInstance("./word2vec.bin");
+        //模型尚未加载完成时为null，此时相邻词语的相似度按照相等处理
+        this.word2Vec = ModelRegistry.getDefault();
     }
 
     public SimWordGraph(float alpha, float beta, float gamma, int maxK, boolean linkBack) {
@@ -39,20 +43,36 @@ public class SimWordGraph extends WordGraph {
     }
 
 
+    /**
+     * 是否使用了词向量，模型尚未就绪时退化为不使用词向量的词图
+     */
+    public boolean isEmbeddingUsed() {
+        return word2Vec != null;
+    }
+
     @Override
     public PageRankGraph makeRankGraph() {
         final String[] words = new String[wordNodeMap.size()];
         double[] values = new double[wordNodeMap.size()];
         final double[][] matrix = new double[wordNodeMap.size()][wordNodeMap.size()];
 
+        final Map<String, Integer> positions = new HashMap<>(wordNodeMap.size() * 4 / 3 + 1);
+
         int i = 0;
         double defaultValue = 1.0f / wordNodeMap.size();
         for (Map.Entry<String, WordNode> entry : wordNodeMap.entrySet()) {
             words[i] = entry.getKey();
             values[i] = defaultValue;
+            positions.put(words[i], i);
             i++;
         }
 
+        //文档中所有词语的词向量一次复制到连续的数组中，按照下标计算相邻词语之间的相似度，
+        //rowSimilarities[j]为当前词语与相邻词语j的相似度
+        final int dimension = word2Vec == null ? 0 : word2Vec.getSize();
+        final float[] vectors = word2Vec == null ? null : word2Vec.gatherVectors(embeddingRows(words, word2Vec));
+        final float[] rowSimilarities = new float[words.length];
+
         //输出word2vec的重要性
         for (i = 0; i < words.length; i++) {
            String wordFrom = words[i];
@@ -72,7 +92,9 @@ public class SimWordGraph extends WordGraph {
             for (String w : adjacentWords.keySet()) {
                 totalImportance += wordNodeMap.get(w).getImportance();
                 totalOccurred += wordNodeMap.get(w).getCount();
-                totalClusterImportance += word2Vec.similarity(wordFrom, w);
+                int j = positions.get(w);
+                rowSimilarities[j] = vectors == null ? 1.0f : MathUtil.dot(vectors, i * dimension, j * dimension, dimension);
+                totalClusterImportance += rowSimilarities[j];
             }
 
             for (int j = 0; j < words.length; j++) {
@@ -85,7 +107,7 @@ public class SimWordGraph extends WordGraph {
                     double partB = nodeTo.getImportance() / totalImportance;
                     //double partC = nodeTo.getCount() * 1.0f / totalOccurred;
 
-                    double partC = word2Vec.similarity(wordFrom, wordTo)/totalClusterImportance;
+                    double partC = rowSimilarities[j]/totalClusterImportance;
 
                     matrix[j][i] =paramAlpha*partA + paramBeta*partB + paramGamma*partC;
                 }
@@ -0,0 +1,82 @@
+package ruc.irm.extractor.keyword.graph;
+
+import ruc.irm.extractor.keyword.RankGraph;
+
+import java.util.Arrays;
+
+/**
+ * 使用稀疏转移矩阵的PageRank计算。
+ * <p>
+ * 词图中每个词语只与少数词语相邻，稠密矩阵的绝大部分元素为0。稀疏矩阵按照目标节点保存非零元素：
+ * 指向节点i的边为sources[offsets[i]]到sources[offsets[i+1]-1]，转移概率为weights中的对应位置，
+ * 来源节点按照下标从小到大排列，累加顺序与PageRankGraph一致，计算结果相同，
+ * 内存和每次迭代的计算量与边的数量成正比。
+ *
+ * @author xiatian
+ */
+public class SparsePageRankGraph extends RankGraph {
+    private final int[] offsets;
+    private final int[] sources;
+    private final double[] weights;
+
+    public SparsePageRankGraph(String[] labels,
+                               double[] distributionOnV,
+                               int[] offsets,
+                               int[] sources,
+                               double[] weights) {
+        super(labels, distributionOnV, null);
+        this.offsets = offsets;
+        this.sources = sources;
+        this.weights = weights;
+    }
+
+    @Override
+    protected double edgeWeight(int from, int to) {
+        int k = Arrays.binarySearch(sources, offsets[to], offsets[to + 1], from);
+        return k < 0 ? 0 : weights[k];
+    }
+
+    @Override
+    public String printMatrix() {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < labels.length; i++) {
+            sb.append(i).append("\t").append(labels[i]).append("\t\t[");
+            for (int k = offsets[i]; k < offsets[i + 1] && k < offsets[i] + 10; k++) {
+                sb.append(sources[k]).append(":").append(weights[k]).append("\t");
+            }
+            sb.append("]\n");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * 计算PageRank
+     */
+    @Override
+    public void iterateCalculation(int iterateCount, double dampFactor) {
+        double[] nextTimeV = new double[V.length];
+
+        int iterators = 0;
+        while (iterators++ < iterateCount) {
+            for (int i = 0; i < V.length; i++) {
+                double accumulate = 0;
+                for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                    accumulate += weights[k] * V[sources[k]];
+                }
+
+                nextTimeV[i] = (1 - dampFactor) * distributionOnV[i] + dampFactor * accumulate;
+            }
+
+            V = nextTimeV;
+        }
+    }
+
+    /**
+     * 非零元素的数量
+     */
+    public int getEdgeCount() {
+        return sources.length;
+    }
+}
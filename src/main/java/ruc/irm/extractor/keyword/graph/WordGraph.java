@@ -3,10 +3,13 @@ package ruc.irm.extractor.keyword.graph;
 import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.zhinang.conf.Configuration;
 import org.zhinang.util.ds.KeyValuePair;
-import ruc.irm.extractor.commons.ChineseStopKeywords;
-import ruc.irm.extractor.keyword.PhraseWeight;
+import ruc.irm.extractor.algorithm.VectorStore;
+import ruc.irm.extractor.algorithm.Word2Vec;
+import ruc.irm.extractor.commons.ExtractConf;
+import ruc.irm.extractor.keyword.DocumentFrequency;
+import ruc.irm.extractor.keyword.Lexicon;
+import ruc.irm.extractor.keyword.RankAlgorithm;
 import ruc.irm.extractor.keyword.RankGraph;
 import ruc.irm.extractor.nlp.SegWord;
 import ruc.irm.extractor.nlp.Segment;
@@ -14,6 +17,7 @@ import ruc.irm.extractor.nlp.SegmentFactory;
 import ruc.irm.extractor.util.MathUtil;
 
 import java.util.*;
+import java.util.function.IntToLongFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -44,8 +48,36 @@ public abstract class WordGraph {
 
     protected Map<String, WordNode> wordNodeMap = new HashMap<String, WordNode>();
 
+    /**
+     * 词图创建时的词语特征表，构建和计算过程中始终使用同一个特征表
+     */
+    protected final Lexicon lexicon = Lexicon.get();
+
+    /**
+     * 语料库的文档频率表，配置后按照词语的IDF调整节点的重要性，没有配置时为null
+     */
+    protected final DocumentFrequency documentFrequency = DocumentFrequency.getDefault();
+
+    /**
+     * 构建转移矩阵时的内存预算
+     */
+    protected GraphMemoryGuard memoryGuard = GraphMemoryGuard.getDefault();
+
     public WordGraph() {
-        this.segment = SegmentFactory.getSegment(new Configuration());
+        this.segment = SegmentFactory.getSegment(ExtractConf.create());
+    }
+
+    /**
+     * 指定构建词图时使用的分词程序，如非中文文本使用对应语言的分词程序
+     *
+     * @param segment
+     */
+    public void setSegment(Segment segment) {
+        this.segment = segment;
+    }
+
+    public Segment getSegment() {
+        return segment;
     }
 
     public Map<String, WordNode> getWordNodeMap() {
@@ -77,11 +109,13 @@ public abstract class WordGraph {
 
             if (wordNode == null) {
                 //如果额外指定了权重，则使用额外指定的权重代替函数传入的权重
-                double specifiedWeight = PhraseWeight.getWeight(word, 0.0f);
+                int slot = lexicon.find(word);
+                double specifiedWeight = lexicon.getWeight(slot, 0.0f);
                 if (specifiedWeight < importance) {
                     specifiedWeight = importance;
                 }
                 wordNode = new WordNode(word, "IGNORE", 0, specifiedWeight);
+                wordNode.setLexiconSlot(slot);
                 wordNodeMap.put(word, wordNode);
             } else if (wordNode.getImportance() < importance) {
                 wordNode.setImportance(importance);
@@ -120,17 +154,32 @@ public abstract class WordGraph {
     }
 
     public void build(String text, float importance) {
-        List<SegWord> words = segment.tag(text);
+        //逐句切分，读取的词语数量达到上限后直接返回，后续文本不再切分
+        build(segment.tagIterator(text), importance);
+    }
 
+    /**
+     * 使用已经切分好的词语构建词图，如Segment.analyze的结果，避免重复切分
+     *
+     * @param words
+     * @param importance
+     */
+    public void build(List<SegWord> words, float importance) {
+        build(words.iterator(), importance);
+    }
+
+    private void build(Iterator<SegWord> words, float importance) {
         int lastPosition = -1;
-        for (int i = 0; i < words.size(); i++) {
-            SegWord segWord = words.get(i);
+        String lastWord = null;
+        for (int i = 0; words.hasNext(); i++) {
+            SegWord segWord = words.next();
 
-            if ("w".equalsIgnoreCase(segWord.pos) || "null".equalsIgnoreCase(segWord.pos)) {
+            int posFlags = segWord.posFlags;
+            if ((posFlags & SegWord.PUNCTUATION) != 0) {
                 continue;
             }
 
-            if (segWord.word.length() >= 2 && (segWord.pos.startsWith("n") || segWord.pos.endsWith("n") || segWord.pos.startsWith("adj") || segWord.pos.startsWith("v"))) {
+            if ((posFlags & SegWord.CANDIDATE) != 0 && segWord.word.length() >= 2) {
                 WordNode wordNode = wordNodeMap.get(segWord.word);
 
                 //如果已经读取了最大允许的单词数量，则忽略后续的内容
@@ -145,28 +194,33 @@ public abstract class WordGraph {
 
                 if (wordNode == null) {
                     //如果额外指定了权重，则使用额外指定的权重代替函数传入的权重
-                    float specifiedWeight = PhraseWeight.getWeight(segWord.word, 0.0f);
+                    int slot = lexicon.find(segWord.word);
+                    float specifiedWeight = lexicon.getWeight(slot, 0.0f);
 
-                    if (specifiedWeight < importance) {
-                        specifiedWeight = importance;
+                    //常见词语的重要性按照归一化的IDF降低
+                    float idfWeight = documentFrequency == null ? 1.0f : documentFrequency.idfWeight(segWord.word);
+                    if (specifiedWeight < importance * idfWeight) {
+                        specifiedWeight = importance * idfWeight;
                     }
 
                     if (segWord.pos.equals("ns") || segWord.equals("nr") || segWord.equals("nz")) {
                         specifiedWeight = specifiedWeight * 1.3f;
-                    } else if (segWord.pos.startsWith("v")) {
+                    } else if ((posFlags & SegWord.VERB) != 0) {
                         specifiedWeight *= 0.5f;
                     }
                     wordNode = new WordNode(segWord.word, segWord.pos, 0, specifiedWeight);
+                    wordNode.setLexiconSlot(slot);
+                    wordNode.setIdfWeight(idfWeight);
                     wordNodeMap.put(segWord.word, wordNode);
-                } else if (wordNode.getImportance() < importance) {
-                    wordNode.setImportance(importance);
+                } else if (wordNode.getImportance() < importance * wordNode.getIdfWeight()) {
+                    wordNode.setImportance(importance * wordNode.getIdfWeight());
                 }
 
                 wordNode.setCount(wordNode.getCount() + 1);
 
                 //加入邻接点
                 if (lastPosition >= 0) {
-                    WordNode lastWordNode = wordNodeMap.get(words.get(lastPosition).word);
+                    WordNode lastWordNode = wordNodeMap.get(lastWord);
                     lastWordNode.addAdjacentWord(segWord.word);
 
                     if (linkBack) {
@@ -190,6 +244,7 @@ public abstract class WordGraph {
                     }
                 }
                 lastPosition = i;
+                lastWord = segWord.word;
             }
 
 //            if(segWord.features.equals("PU")) {
@@ -204,17 +259,156 @@ public abstract class WordGraph {
     }
 
     /**
-     * 该步处理用于删除过多的WordNode，仅保留出现频次在前100的词语，以便加快处理速度
+     * 该步处理用于删除过多的WordNode，仅保留词频与节点重要性的乘积排在前maxWords的词语，
+     * 以减少转移矩阵占用的内存并加快处理速度，被删除词语的邻接关系一并删除
      */
-    void shrink() {
+    void shrink(int maxWords) {
+        if (wordNodeMap.size() <= maxWords) {
+            return;
+        }
 
+        List<WordNode> nodes = new ArrayList<>(wordNodeMap.values());
+        nodes.sort(Comparator.comparingDouble((WordNode n) -> n.getCount() * n.getImportance()).reversed()
+                .thenComparing(WordNode::getName));
+
+        Map<String, WordNode> kept = new HashMap<>(maxWords * 4 / 3 + 1);
+        for (int i = 0; i < maxWords; i++) {
+            kept.put(nodes.get(i).getName(), nodes.get(i));
+        }
+        for (WordNode node : kept.values()) {
+            node.getAdjacentWords().keySet().retainAll(kept.keySet());
+            node.getLeftNeighbors().keySet().retainAll(kept.keySet());
+            node.getRightNeighbors().keySet().retainAll(kept.keySet());
+        }
+        wordNodeMap = kept;
     }
 
     protected abstract RankGraph makeRankGraph();
 
+    /**
+     * 根据邻接关系构建稀疏的转移矩阵，计算结果与makeRankGraph相同；不支持稀疏矩阵的词图返回null
+     */
+    protected RankGraph makeSparseRankGraph() {
+        return null;
+    }
+
+    /**
+     * 迭代计算占用的内存估计值：稠密转移矩阵、标签和各个向量，以及该类型的词图在构建矩阵和迭代时的其他分配。
+     * makeRankGraph另外分配了与节点数量的平方成正比的内存时，子类需要覆盖该方法
+     *
+     * @param words 节点数量
+     */
+    protected long estimateRankBytes(int words) {
+        return GraphMemoryGuard.estimateDenseBytes(words);
+    }
+
+    /**
+     * 构建转移矩阵之前估计词图和矩阵占用的内存，超过预算时按照memoryGuard的策略依次改用稀疏矩阵、
+     * 裁剪候选词语，仍然超过预算时拒绝本次请求
+     *
+     * @param sparseAllowed 是否可以使用稀疏矩阵，转移矩阵需要交给DivRank等其他算法时为false
+     * @param rankBytes     按照节点数量估计迭代计算占用的内存
+     */
+    private RankGraph makeBudgetedRankGraph(boolean sparseAllowed, IntToLongFunction rankBytes) {
+        int words = wordNodeMap.size();
+        long edges = 0;
+        long entries = 0;
+        for (WordNode node : wordNodeMap.values()) {
+            edges += node.getAdjacentWords().size();
+            entries += node.getAdjacentWords().size() + node.getLeftNeighbors().size()
+                    + node.getRightNeighbors().size();
+        }
+
+        long graphBytes = GraphMemoryGuard.estimateGraphBytes(words, entries);
+        long denseBytes = rankBytes.applyAsLong(words);
+        if (memoryGuard.fits(graphBytes + denseBytes)) {
+            memoryGuard.recordDense(denseBytes);
+            return makeRankGraph();
+        }
+
+        if (sparseAllowed && memoryGuard.allowsSparse()) {
+            long sparseBytes = GraphMemoryGuard.estimateSparseBytes(words, edges);
+            if (memoryGuard.fits(graphBytes + sparseBytes)) {
+                RankGraph g = makeSparseRankGraph();
+                if (g != null) {
+                    LOG.info("{} words need {} bytes for dense matrix, use sparse matrix of {} bytes instead.",
+                            words, denseBytes, sparseBytes);
+                    memoryGuard.recordSparse(sparseBytes);
+                    return g;
+                }
+            }
+        }
+
+        if (memoryGuard.allowsPrune()) {
+            int maxWords = memoryGuard.maxDenseWords(words, graphBytes, rankBytes);
+            if (maxWords >= memoryGuard.getMinWords()) {
+                LOG.info("{} words need {} bytes for dense matrix, shrink to {} words.", words, denseBytes, maxWords);
+                shrink(maxWords);
+                memoryGuard.recordPruned(rankBytes.applyAsLong(maxWords));
+                return makeRankGraph();
+            }
+        }
+
+        memoryGuard.recordRejected();
+        throw new GraphMemoryGuard.BudgetExceededException(words, graphBytes + denseBytes, memoryGuard.getBudget());
+    }
+
     public List<String> findTopKeywords(int topN, boolean findPhrase) {
-        RankGraph g = makeRankGraph();
-        g.iterateCalculation(20, 0.85f);
+        return findTopKeywords(topN, findPhrase, 20);
+    }
+
+    /**
+     * 指定迭代次数计算词语得分并选取关键词，迭代次数越少计算越快，排序结果越粗略
+     *
+     * @param topN       关键词数量
+     * @param findPhrase 是否合并为短语
+     * @param iterations 迭代计算的次数
+     */
+    public List<String> findTopKeywords(int topN, boolean findPhrase, int iterations) {
+        return findTopKeywords(topN, findPhrase, iterations, 0.85f);
+    }
+
+    /**
+     * 指定迭代次数和阻尼系数计算词语得分并选取关键词
+     */
+    public List<String> findTopKeywords(int topN, boolean findPhrase, int iterations, double dampFactor) {
+        RankGraph g = makeBudgetedRankGraph(true, this::estimateRankBytes);
+        g.iterateCalculation(iterations, dampFactor);
+        return selectTopKeywords(g, topN, findPhrase);
+    }
+
+    /**
+     * 在同一个转移矩阵上依次使用多种排序算法计算关键词，词图和转移矩阵只构建一次，
+     * 按照算法返回各自的关键词
+     *
+     * @param topN       关键词数量
+     * @param findPhrase 是否合并为短语
+     * @param iterations 迭代计算的次数
+     * @param dampFactor 阻尼系数
+     * @param algorithms 排序算法
+     */
+    public Map<RankAlgorithm, List<String>> findTopKeywords(int topN, boolean findPhrase, int iterations,
+                                                            double dampFactor, RankAlgorithm... algorithms) {
+        Map<RankAlgorithm, List<String>> results = new EnumMap<>(RankAlgorithm.class);
+        if (algorithms.length == 0) {
+            return results;
+        }
+
+        RankGraph base = makeBudgetedRankGraph(false,
+                n -> estimateRankBytes(n) + algorithms.length * GraphMemoryGuard.estimateAlgorithmBytes(n));
+        for (RankAlgorithm algorithm : algorithms) {
+            //排序时会交换标签的位置，每个算法使用标签的副本；转移矩阵和偏好向量在计算中只读，可以共享
+            RankGraph g = algorithm.create(base.labels.clone(), base.distributionOnV, base.MATRIX);
+            g.iterateCalculation(iterations, dampFactor);
+            results.put(algorithm, selectTopKeywords(g, topN, findPhrase));
+        }
+        return results;
+    }
+
+    /**
+     * 按照迭代计算后的得分排序，过滤停用词后选取关键词，需要时合并为短语
+     */
+    private List<String> selectTopKeywords(RankGraph g, int topN, boolean findPhrase) {
         g.quickSort();
 
         //如果不找短语，直接返回
@@ -224,7 +418,7 @@ public abstract class WordGraph {
             int count = 0;
             for (int i = 0; i < g.labels.length && count < topN; i++) {
                 String word = g.labels[i];
-                if (!ChineseStopKeywords.isStopKeyword(word)) {
+                if (!lexicon.isStopKeyword(word)) {
                     keywords.add(word);
                     count++;
                 }
@@ -279,7 +473,7 @@ public abstract class WordGraph {
         int count = 0;
         for (int i = 0; i < g.labels.length && count < limit; i++) {
             String word = g.labels[i];
-            if (!ChineseStopKeywords.isStopKeyword(word)) {
+            if (!lexicon.isStopKeyword(word)) {
                 keywords.add(word);
                 count++;
             }
@@ -338,6 +532,35 @@ public abstract class WordGraph {
     }
 
 
+    /**
+     * 不进行迭代计算，直接按照词频与节点重要性的乘积选取关键词，用于时间不足时的降级处理
+     *
+     * @param topN 关键词数量
+     */
+    public List<String> findTopKeywordsByFrequency(int topN) {
+        List<WordNode> nodes = new ArrayList<>(wordNodeMap.size());
+        for (WordNode node : wordNodeMap.values()) {
+            if (!lexicon.isStopKeyword(node.getLexiconSlot())) {
+                nodes.add(node);
+            }
+        }
+        nodes.sort((n1, n2) -> Double.compare(n2.getCount() * n2.getImportance(),
+                n1.getCount() * n1.getImportance()));
+        return nodes.stream().limit(topN).map(WordNode::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * 词语在词向量模型中的下标，每个词语只查找一次，不在模型中时为-1
+     */
+    protected int[] embeddingRows(String[] words, Word2Vec word2Vec) {
+        int[] rows = new int[words.length];
+        VectorStore store = word2Vec.getStore();
+        for (int i = 0; i < words.length; i++) {
+            rows[i] = store.indexOf(words[i]);
+        }
+        return rows;
+    }
+
     private int getNodeScore(String word) {
         //计算边的权重
         Collection<Integer> leftNeighbors = wordNodeMap.get(word).getLeftNeighbors().values();
@@ -362,6 +585,13 @@ public abstract class WordGraph {
         return (int) (value * 1000);
     }
 
+    /**
+     * 指定构建转移矩阵时的内存预算，默认使用GraphMemoryGuard.getDefault()
+     */
+    public void setMemoryGuard(GraphMemoryGuard memoryGuard) {
+        this.memoryGuard = memoryGuard;
+    }
+
     /**
      * 设置最大可以读取的词语数量
      *
@@ -59,6 +59,32 @@ public class WordNode {
     /** 作为关键词的得分，越大越有可能为关键词 */
     private double score = 0;
 
+    /**
+     * 词语在所属词图的特征表(Lexicon)中的槽位，不存在时为-1
+     */
+    private int lexiconSlot = -1;
+
+    public int getLexiconSlot() {
+        return lexiconSlot;
+    }
+
+    public void setLexiconSlot(int lexiconSlot) {
+        this.lexiconSlot = lexiconSlot;
+    }
+
+    /**
+     * 按照文档频率计算的归一化IDF，没有配置文档频率表时为1
+     */
+    private float idfWeight = 1.0f;
+
+    public float getIdfWeight() {
+        return idfWeight;
+    }
+
+    public void setIdfWeight(float idfWeight) {
+        this.idfWeight = idfWeight;
+    }
+
     /**
      * 当前节点所指向的节点名称及其出现次数
      */
@@ -0,0 +1,170 @@
+package ruc.irm.extractor.nlp;
+
+/**
+ * 基于文字类别和字符三元组(trigram)的快速语言识别，用于在抽取关键词之前为文本选择分词程序和停用词表。
+ * <p>
+ * 只扫描文本前面的PREFIX_LENGTH个字符，按照Character.UnicodeScript区分文字：拉丁字母占多数时
+ * 根据拉丁字母的三元组在英语、德语、法语和芬兰语之间打分；汉字、平假名、片假名以及西里尔字母、韩文、
+ * 阿拉伯字母等尚不支持的文字占多数时返回中文，即使用默认的HanLP分词程序，而不是猜测为某种欧洲语言。
+ * 三元组的权重表在类加载时生成，识别过程不分配任何对象。
+ *
+ * @author xiatian
+ */
+public final class LanguageDetector {
+
+    public enum Language {
+        ZH("zh"), EN("en"), DE("de"), FR("fr"), FI("fi");
+
+        private final String code;
+
+        Language(String code) {
+            this.code = code;
+        }
+
+        public String getCode() {
+            return code;
+        }
+    }
+
+    /**
+     * 参与识别的文本前缀长度
+     */
+    public static final int PREFIX_LENGTH = 512;
+
+    private static final int TABLE_BITS = 12;
+    private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+
+    private static final Language[] LATIN_LANGUAGES = {Language.EN, Language.DE, Language.FR, Language.FI};
+
+    /**
+     * 各语言中常见的三元组，'_'表示词语边界
+     */
+    private static final String[][] TRIGRAMS = {
+            //en
+            {"_th", "the", "he_", "nd_", "_an", "and", "ing", "ng_", "_of", "of_", "ion", "_to", "to_", "is_",
+                    "_in", "ed_", "at_", "es_", "_wh", "_is", "his", "tio", "ent", "_be", "ly_"},
+            //de
+            {"en_", "er_", "_de", "der", "ich", "sch", "ein", "_di", "die", "ie_", "und", "_un", "nd_", "che",
+                    "cht", "_ei", "den", "ung", "gen", "_ge", "ten", "_da", "ist", "_zu", "auf"},
+            //fr
+            {"es_", "_de", "de_", "le_", "_le", "ent", "_la", "la_", "les", "ion", "_et", "et_", "que", "_qu",
+                    "ue_", "re_", "_pa", "ans", "ait", "our", "_un", "eme", "_co", "eau", "_po"},
+            //fi
+            {"en_", "an_", "_ja", "ja_", "in_", "sta", "ta_", "ssa", "sa_", "ist", "aan", "lla", "tta", "ise",
+                    "_ka", "ais", "kse", "_on", "on_", "ine", "tti", "taa", "ell", "ksi", "yks"}
+    };
+
+    private static final byte[][] WEIGHTS = new byte[LATIN_LANGUAGES.length][1 << TABLE_BITS];
+
+    static {
+        for (int lang = 0; lang < TRIGRAMS.length; lang++) {
+            for (String trigram : TRIGRAMS[lang]) {
+                int h = hash(trigram.charAt(0), trigram.charAt(1), trigram.charAt(2));
+                WEIGHTS[lang][h] = 2;
+            }
+        }
+    }
+
+    private LanguageDetector() {
+
+    }
+
+    private static int hash(char c1, char c2, char c3) {
+        int h = c1 * 961 + c2 * 31 + c3;
+        return (h ^ (h >>> TABLE_BITS)) & TABLE_MASK;
+    }
+
+    private static boolean isCjk(Character.UnicodeScript script) {
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA;
+    }
+
+    /**
+     * 识别文本的语言，无法识别或者不是拉丁字母的文字时返回中文，以保持原有的处理方式
+     *
+     * @param text
+     * @return
+     */
+    public static Language detect(CharSequence text) {
+        if (text == null) {
+            return Language.ZH;
+        }
+        int length = Math.min(text.length(), PREFIX_LENGTH);
+
+        int han = 0;
+        int latin = 0;
+        int other = 0;
+        int en = 0, de = 0, fr = 0, fi = 0;
+        char c1 = '_', c2 = '_';
+        for (int i = 0; i < length; i++) {
+            char ch = text.charAt(i);
+            char c3;
+            //ASCII字符不需要查找文字类别
+            Character.UnicodeScript script = ch < 0x80 ? null : Character.UnicodeScript.of(ch);
+            if (script != null && isCjk(script)) {
+                han++;
+                c3 = '_';
+            } else if (!Character.isLetter(ch)) {
+                c3 = '_';
+            } else if (script != null && script != Character.UnicodeScript.LATIN) {
+                //西里尔字母、韩文、阿拉伯字母等尚不支持的文字
+                other++;
+                c3 = '_';
+            } else {
+                latin++;
+                c3 = Character.toLowerCase(ch);
+                //带有特定变音符号的字母直接加分
+                switch (c3) {
+                    case 'ß':
+                    case 'ü':
+                        de += 6;
+                        break;
+                    case 'é':
+                    case 'è':
+                    case 'ê':
+                    case 'à':
+                    case 'ç':
+                    case 'ô':
+                        fr += 6;
+                        break;
+                    case 'ä':
+                    case 'ö':
+                        de += 2;
+                        fi += 3;
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            if (c3 != '_' || c2 != '_') {
+                int h = hash(c1, c2, c3);
+                en += WEIGHTS[0][h];
+                de += WEIGHTS[1][h];
+                fr += WEIGHTS[2][h];
+                fi += WEIGHTS[3][h];
+            }
+            c1 = c2;
+            c2 = c3;
+        }
+
+        if (latin == 0 || (han + other) * 2 >= latin) {
+            return Language.ZH;
+        }
+
+        Language best = Language.EN;
+        int bestScore = en;
+        if (de > bestScore) {
+            best = Language.DE;
+            bestScore = de;
+        }
+        if (fr > bestScore) {
+            best = Language.FR;
+            bestScore = fr;
+        }
+        if (fi > bestScore) {
+            best = Language.FI;
+        }
+        return best;
+    }
+}
@@ -10,15 +10,89 @@ import java.util.StringTokenizer;
  * @author xiatian
  */
 public class SegWord {
+    /**
+     * 词性类别标记位，在切分时预先计算，以便在词图构建等热点循环中通过位运算代替字符串比较
+     */
+    public static final int NOUN = 1;          //名词或名词性词语，词性以n开头或以n结尾，如n, ns, vn, an
+    public static final int VERB = 1 << 1;     //动词，词性以v开头
+    public static final int ADJECTIVE = 1 << 2;//形容词，词性以a开头
+    public static final int PUNCTUATION = 1 << 3;//标点符号(w)或无法识别的词性(null)
+    public static final int CANDIDATE = 1 << 4;//可以作为关键词候选的词性：名词性词语、动词以及adj
+
+    /**
+     * 未知的词性编码
+     */
+    public static final short UNKNOWN_POS = -1;
+
     public String word;
     public String pos;
 
+    /**
+     * 紧凑的词性编码，HanLP切分时为Nature的序号，其他情况为UNKNOWN_POS
+     */
+    public short posCode = UNKNOWN_POS;
+
+    /**
+     * 词性类别标记位的组合
+     */
+    public int posFlags = 0;
+
+    /**
+     * 词语在原始文本中的起始位置(字符下标)，未知时为-1
+     */
+    public int offset = -1;
+
     public SegWord() {
     }
 
     public SegWord(String word, String pos) {
+        this(word, pos, UNKNOWN_POS, flagsOf(pos));
+    }
+
+    public SegWord(String word, String pos, short posCode, int posFlags) {
         this.word = word;
         this.pos = pos;
+        this.posCode = posCode;
+        this.posFlags = posFlags;
+    }
+
+    /**
+     * 根据词性字符串计算词性类别标记位
+     *
+     * @param pos
+     * @return
+     */
+    public static int flagsOf(String pos) {
+        if (pos == null || pos.isEmpty()) {
+            return 0;
+        }
+        if ("w".equalsIgnoreCase(pos) || "null".equalsIgnoreCase(pos)) {
+            return PUNCTUATION;
+        }
+
+        int flags = 0;
+        if (pos.startsWith("n") || pos.endsWith("n")) {
+            flags |= NOUN | CANDIDATE;
+        }
+        if (pos.startsWith("v")) {
+            flags |= VERB | CANDIDATE;
+        }
+        if (pos.startsWith("a")) {
+            flags |= ADJECTIVE;
+            if (pos.startsWith("adj")) {
+                flags |= CANDIDATE;
+            }
+        }
+        return flags;
+    }
+
+    public SegWord setOffset(int offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    public boolean is(int flags) {
+        return (posFlags & flags) != 0;
     }
 
     public static final List<SegWord> parse(String segedSentence) {
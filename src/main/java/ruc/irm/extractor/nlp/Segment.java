@@ -10,6 +10,7 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
 
@@ -43,6 +44,17 @@ public interface Segment {
      */
     public List<SegWord> tag(String sentence);
 
+    /**
+     * 以迭代器的方式逐句切分并标记词性，调用者停止迭代后，剩余的文本不再进行切分，
+     * 适用于只需要读取文本前面一部分词语的场景，如词图构建时的最大词语数量限制
+     *
+     * @param text
+     * @return
+     */
+    public default Iterator<SegWord> tagIterator(String text) {
+        return tag(text).iterator();
+    }
+
     public default String tagAsString(String sentence){
         StringBuilder sb = new StringBuilder();
         for (SegWord word : tag(sentence)) {
@@ -90,6 +102,37 @@ public interface Segment {
 
     public Entities findEntities(String sentence, boolean allowDuplicated);
 
+    /**
+     * 切分文本并识别其中的命名实体，词语和实体来自同一次切分的结果，
+     * 避免先调用tag再调用findEntities对同一文本切分两次
+     *
+     * @param text
+     * @param allowDuplicated 实体是否允许重复
+     * @return
+     */
+    public default Analysis analyze(String text, boolean allowDuplicated) {
+        return new Analysis(tag(text), findEntities(text, allowDuplicated));
+    }
+
+    public static final class Analysis {
+        private final List<SegWord> words;
+
+        private final Entities entities;
+
+        public Analysis(List<SegWord> words, Entities entities) {
+            this.words = words;
+            this.entities = entities;
+        }
+
+        public List<SegWord> getWords() {
+            return words;
+        }
+
+        public Entities getEntities() {
+            return entities;
+        }
+    }
+
     public static final class Entities {
         private Collection<String> persons = null;
 
@@ -133,6 +176,12 @@ public interface Segment {
             spaces.add(space);
         }
 
+        public void addAll(Entities other) {
+            persons.addAll(other.persons);
+            organizations.addAll(other.organizations);
+            spaces.addAll(other.spaces);
+        }
+
         @Override
         public String toString() {
             return "Entities{" +
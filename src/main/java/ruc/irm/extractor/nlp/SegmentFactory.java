@@ -1,13 +1,23 @@
 package ruc.irm.extractor.nlp;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.zhinang.conf.Configuration;
+import ruc.irm.extractor.nlp.impl.HanDictionarySnapshot;
 import ruc.irm.extractor.nlp.impl.HanSegment;
+import ruc.irm.extractor.nlp.impl.LuceneSegment;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class SegmentFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentFactory.class);
+
     private static Segment hanSegment = null;
     private static Segment ansjSegment = null;
+    private static Map<String, Segment> luceneSegments = new ConcurrentHashMap<>();
     /**
      * 分词处理的参数可以通过conf传递
      *
@@ -19,8 +29,24 @@ public final class SegmentFactory {
     }
 
 
-    public static final Segment getHanSegment(Configuration conf) {
+    /**
+     * 共享的HanLP切分程序，配置只在第一次创建时读取，之后的调用直接返回已创建的对象，
+     * 不会用调用者的配置覆盖其他使用者的设置，因此应当传入ExtractConf.create()等包含conf-extractor.xml的配置
+     *
+     * @param conf
+     * @return
+     */
+    public static final synchronized Segment getHanSegment(Configuration conf) {
         if (hanSegment == null) {
+            //预先编译好的词典快照，通过HanDictionarySnapshot.main生成
+            String snapshot = conf.get("extractor.segment.dictionary.snapshot");
+            if (snapshot != null && new File(snapshot).exists()) {
+                try {
+                    HanDictionarySnapshot.load(new File(snapshot));
+                } catch (IOException e) {
+                    LOG.error("load dictionary snapshot error.", e);
+                }
+            }
             hanSegment = new HanSegment(conf);
 //            try {
 ////                hanSegment.loadUserDefinedWords("/new_wiki_words.dic.gz");
@@ -28,13 +54,24 @@ public final class SegmentFactory {
 //            } catch (IOException e) {
 //                e.printStackTrace();
 //            }
-        } else {
-            hanSegment.setConfiguration(conf);
         }
 
         return hanSegment;
     }
 
+    /**
+     * 基于Lucene分析器的切分程序，用于英语等非中文文本
+     *
+     * @param conf
+     * @param language 语言代码：en, de, fr, fi
+     * @return
+     */
+    public static final Segment getLuceneSegment(Configuration conf, String language) {
+        Segment segment = luceneSegments.computeIfAbsent(language, lang -> new LuceneSegment(conf, lang));
+        segment.setConfiguration(conf);
+        return segment;
+    }
+
 //
 //    public static final Segment getAnsjSegment(Configuration conf) {
 //        if (ansjSegment == null) {
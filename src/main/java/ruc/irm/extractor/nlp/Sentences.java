@@ -0,0 +1,77 @@
+package ruc.irm.extractor.nlp;
+
+/**
+ * 按照句子边界切分文本的工具类，切分时只返回句子的结束位置，不复制文本内容
+ *
+ * @author xiatian
+ */
+public final class Sentences {
+    /**
+     * 没有句子结束符时，单个句子允许的最大长度，超过该长度时尽量在逗号或空白处断开
+     */
+    public static final int MAX_SENTENCE_LENGTH = 256;
+
+    private Sentences() {
+
+    }
+
+    /**
+     * 是否为句子的结束符号
+     */
+    public static boolean isTerminator(char ch) {
+        switch (ch) {
+            case '。':
+            case '！':
+            case '？':
+            case '；':
+            case '!':
+            case '?':
+            case ';':
+            case '\n':
+            case '\r':
+            case '…':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isSoftBreak(char ch) {
+        return ch == '，' || ch == ',' || ch == '、' || Character.isWhitespace(ch);
+    }
+
+    /**
+     * 返回从start开始的句子的结束位置(不包含)，句子结束符号归属于当前句子
+     *
+     * @param text
+     * @param start
+     * @return
+     */
+    public static int nextBoundary(CharSequence text, int start) {
+        int length = text.length();
+        int limit = Math.min(length, start + MAX_SENTENCE_LENGTH);
+        int softBreak = -1;
+        for (int i = start; i < limit; i++) {
+            char ch = text.charAt(i);
+            if (isTerminator(ch)) {
+                //连续的结束符号合并到同一个句子中，如"？！"或"\r\n"
+                int end = i + 1;
+                while (end < length && isTerminator(text.charAt(end))) {
+                    end++;
+                }
+                return end;
+            } else if (isSoftBreak(ch)) {
+                softBreak = i + 1;
+            }
+        }
+
+        if (limit == length) {
+            return length;
+        }
+        if (softBreak > start) {
+            return softBreak;
+        }
+        //避免把代理对(surrogate pair)拆分到两个句子中
+        return Character.isHighSurrogate(text.charAt(limit - 1)) ? limit - 1 : limit;
+    }
+}
@@ -0,0 +1,244 @@
+package ruc.irm.extractor.nlp.impl;
+
+import com.hankcs.hanlp.HanLP;
+import com.hankcs.hanlp.collection.trie.DoubleArrayTrie;
+import com.hankcs.hanlp.corpus.tag.Nature;
+import com.hankcs.hanlp.dictionary.CoreDictionary;
+import com.hankcs.hanlp.dictionary.CustomDictionary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ruc.irm.extractor.nlp.SegmentFactory;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 自定义词典的二进制快照。
+ * <p>
+ * 构建时把HanLP配置的自定义词典和new_wiki_words.dic.gz、new_tag_words.dic.gz等用户词典合并，
+ * 编译为双数组Trie树后写入快照文件；启动时通过内存映射读取快照，直接替换HanLP的CustomDictionary.dat，
+ * 不再逐行读取词典并逐个调用CustomDictionary.add。HanLP的双数组Trie树只能使用int[]，
+ * 因此base和check数组从映射区域逐个读入堆中，但不再把整个文件复制为中间的字节数组。
+ * <p>
+ * 快照文件格式(大端序)：
+ * <pre>
+ * int magic, int version
+ * int 词性数量, 每个词性: int 字节数 + UTF-8名称
+ * int 属性数量, 每个属性: int 总频次, int 词性数量, 每个词性: int 词性下标 + int 频次
+ * int 词语数量, 每个词语(按照字典序): int 属性下标
+ * 双数组Trie树(DoubleArrayTrie.save的格式)
+ * </pre>
+ * 同一词典中的用户词语共享同一个属性对象，以减少启动后的对象数量。
+ *
+ * @author xiatian
+ */
+public final class HanDictionarySnapshot {
+    private static final Logger LOG = LoggerFactory.getLogger(HanDictionarySnapshot.class);
+
+    private static final int MAGIC = 0x57444454; //"WDDT"
+    private static final int VERSION = 1;
+
+    public static final String[] DEFAULT_USER_DICTIONARIES = new String[]{
+            "/new_wiki_words.dic.gz",
+            "/new_tag_words.dic.gz"
+    };
+
+    private HanDictionarySnapshot() {
+
+    }
+
+    /**
+     * 从映射区域读取base和check数组的双数组Trie树，格式与DoubleArrayTrie.save一致：
+     * int size, 之后为size组交替保存的base[i]和check[i]
+     */
+    private static final class MappedTrie extends DoubleArrayTrie<CoreDictionary.Attribute> {
+        private static final long serialVersionUID = 1L;
+
+        //与DoubleArrayTrie.load保持一致，数组末尾预留的空间
+        private static final int PADDING = 65535;
+
+        boolean load(IntBuffer ints, CoreDictionary.Attribute[] values) {
+            if (ints.remaining() < 1) {
+                return false;
+            }
+            int count = ints.get();
+            if (count < 0 || ints.remaining() < 2L * count) {
+                return false;
+            }
+            this.size = count;
+            this.base = new int[count + PADDING];
+            this.check = new int[count + PADDING];
+            for (int i = 0; i < count; i++) {
+                base[i] = ints.get();
+                check[i] = ints.get();
+            }
+            this.v = values;
+            return true;
+        }
+    }
+
+    /**
+     * 把HanLP的自定义词典和指定的用户词典(资源路径，gzip压缩，每行一个词语)编译为快照文件
+     *
+     * @param snapshotFile
+     * @param userDictionaries
+     * @throws IOException
+     */
+    public static void compile(File snapshotFile, String... userDictionaries) throws IOException {
+        TreeMap<String, CoreDictionary.Attribute> map = new TreeMap<>();
+
+        //HanLP配置的自定义词典，格式为"路径 [默认词性]"，优先级递减
+        LinkedHashSet<Nature> customNatures = new LinkedHashSet<>();
+        for (String path : HanLP.Config.CustomDictionaryPath) {
+            String[] items = path.trim().split(" ");
+            Nature defaultNature = items.length > 1 ? Nature.create(items[1]) : Nature.n;
+            if (!CustomDictionary.load(items[0], defaultNature, map, customNatures)) {
+                LOG.warn("load custom dictionary {} failed.", items[0]);
+            }
+        }
+
+        //用户词典与insertUserDefinedWord(word, "n", 100)的处理保持一致，已存在的词语不覆盖
+        CoreDictionary.Attribute userAttribute = new CoreDictionary.Attribute(Nature.n, 100);
+        for (String resourceFileName : userDictionaries) {
+            int count = 0;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(SegmentFactory.class.getResourceAsStream(resourceFileName)),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && map.putIfAbsent(line, userAttribute) == null) {
+                        count++;
+                    }
+                }
+            }
+            LOG.info("{} new words added from {}", count, resourceFileName);
+        }
+
+        DoubleArrayTrie<CoreDictionary.Attribute> dat = new DoubleArrayTrie<>();
+        if (dat.build(map) != 0) {
+            throw new IOException("build double array trie failed.");
+        }
+
+        //词性和属性表
+        Map<Nature, Integer> natureIndex = new LinkedHashMap<>();
+        Map<CoreDictionary.Attribute, Integer> attributeIndex = new IdentityHashMap<>();
+        List<CoreDictionary.Attribute> attributes = new ArrayList<>();
+        for (CoreDictionary.Attribute attribute : map.values()) {
+            if (!attributeIndex.containsKey(attribute)) {
+                attributeIndex.put(attribute, attributes.size());
+                attributes.add(attribute);
+                for (Nature nature : attribute.nature) {
+                    natureIndex.putIfAbsent(nature, natureIndex.size());
+                }
+            }
+        }
+
+        File parent = snapshotFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshotFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(natureIndex.size());
+            for (Nature nature : natureIndex.keySet()) {
+                byte[] name = nature.toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+            }
+
+            out.writeInt(attributes.size());
+            for (CoreDictionary.Attribute attribute : attributes) {
+                out.writeInt(attribute.totalFrequency);
+                out.writeInt(attribute.nature.length);
+                for (int i = 0; i < attribute.nature.length; i++) {
+                    out.writeInt(natureIndex.get(attribute.nature[i]));
+                    out.writeInt(attribute.frequency[i]);
+                }
+            }
+
+            out.writeInt(map.size());
+            for (CoreDictionary.Attribute attribute : map.values()) {
+                out.writeInt(attributeIndex.get(attribute));
+            }
+
+            if (!dat.save(out)) {
+                throw new IOException("save double array trie failed.");
+            }
+        }
+        LOG.info("dictionary snapshot with {} words saved to {}", map.size(), snapshotFile.getAbsolutePath());
+    }
+
+    /**
+     * 通过内存映射加载快照，并替换HanLP的自定义词典。需要在创建HanLP分词器之前调用，
+     * 因为分词器在创建时会引用当时的CustomDictionary.dat
+     *
+     * @param snapshotFile
+     * @throws IOException
+     */
+    public static void load(File snapshotFile) throws IOException {
+        long start = System.currentTimeMillis();
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = new RandomAccessFile(snapshotFile, "r").getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("不是有效的词典快照文件：" + snapshotFile.getAbsolutePath());
+        }
+
+        Nature[] natures = new Nature[buffer.getInt()];
+        for (int i = 0; i < natures.length; i++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            natures[i] = Nature.create(new String(name, StandardCharsets.UTF_8));
+        }
+
+        CoreDictionary.Attribute[] attributes = new CoreDictionary.Attribute[buffer.getInt()];
+        for (int i = 0; i < attributes.length; i++) {
+            int totalFrequency = buffer.getInt();
+            CoreDictionary.Attribute attribute = new CoreDictionary.Attribute(buffer.getInt());
+            attribute.totalFrequency = totalFrequency;
+            for (int j = 0; j < attribute.nature.length; j++) {
+                attribute.nature[j] = natures[buffer.getInt()];
+                attribute.frequency[j] = buffer.getInt();
+            }
+            attributes[i] = attribute;
+        }
+
+        CoreDictionary.Attribute[] values = new CoreDictionary.Attribute[buffer.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = attributes[buffer.getInt()];
+        }
+
+        //双数组直接从映射区域读入HanLP的int数组，不经过中间的字节数组
+        MappedTrie dat = new MappedTrie();
+        if (!dat.load(buffer.slice().asIntBuffer(), values)) {
+            throw new IOException("load double array trie failed: " + snapshotFile.getAbsolutePath());
+        }
+
+        CustomDictionary.dat = dat;
+        LOG.info("load dictionary snapshot {} with {} words in {} ms.", snapshotFile.getAbsolutePath(),
+                values.length, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 构建词典快照：HanDictionarySnapshot [输出文件] [用户词典资源...]
+     */
+    public static void main(String[] args) throws IOException {
+        File snapshotFile = new File(args.length > 0 ? args[0] : "data/dictionary/custom/wikidig.dic.bin");
+        String[] userDictionaries = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_USER_DICTIONARIES;
+
+        compile(snapshotFile, userDictionaries);
+        System.out.println("词典快照保存到:" + snapshotFile.getAbsolutePath());
+    }
+}
@@ -1,6 +1,5 @@
 package ruc.irm.extractor.nlp.impl;
 
-import com.hankcs.hanlp.HanLP;
 import com.hankcs.hanlp.dictionary.CustomDictionary;
 import com.hankcs.hanlp.seg.common.Term;
 import org.slf4j.Logger;
@@ -8,9 +7,17 @@ import org.slf4j.LoggerFactory;
 import org.zhinang.conf.Configuration;
 import ruc.irm.extractor.nlp.SegWord;
 import ruc.irm.extractor.nlp.Segment;
+import ruc.irm.extractor.nlp.Sentences;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * HanLP implementation
@@ -23,22 +30,53 @@ public class HanSegment implements Segment {
 
     private Configuration configuration = null;
 
+    private volatile HanSegmentSettings settings = null;
+
+    /**
+     * 长文本并行切分时共享的线程池
+     */
+    private static final ForkJoinPool SEGMENT_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 每个线程复用的HanLP分词器，分别用于关键词抽取(速度优先)和实体识别(精度优先)，
+     * HanLP的分词器可以重复使用，但不保证线程安全
+     */
+    private volatile ThreadLocal<com.hankcs.hanlp.seg.Segment> keywordSegments = null;
+    private volatile ThreadLocal<com.hankcs.hanlp.seg.Segment> entitySegments = null;
+
     /**
      * if set "entity.find.crf" to true in configuration, then, crf method will be used to find entities.
      * @param configuration
      */
     public HanSegment(Configuration configuration) {
-        this.configuration = configuration;
+        setConfiguration(configuration);
     }
 
     @Override
     public void setConfiguration(Configuration configuration) {
         this.configuration = configuration;
+
+        //配置没有变化时，继续使用各线程已经创建的分词器
+        HanSegmentSettings newSettings = new HanSegmentSettings(configuration);
+        if (!newSettings.equals(settings)) {
+            LOG.info("create HanLP segments with {}", newSettings);
+            this.keywordSegments = ThreadLocal.withInitial(newSettings::newKeywordSegment);
+            this.entitySegments = ThreadLocal.withInitial(newSettings::newEntitySegment);
+            this.settings = newSettings;
+        }
+    }
+
+    private com.hankcs.hanlp.seg.Segment keywordSegment() {
+        return keywordSegments.get();
+    }
+
+    private com.hankcs.hanlp.seg.Segment entitySegment() {
+        return entitySegments.get();
     }
 
     @Override
     public List<String> segment(String sentence) {
-        List<Term> terms = HanLP.segment(sentence);
+        List<Term> terms = keywordSegment().seg(sentence);
         List<String> results = new ArrayList<String>();
         for (Term term : terms) {
             results.add(term.word);
@@ -48,16 +86,91 @@ public class HanSegment implements Segment {
 
     @Override
     public List<SegWord> tag(String sentence) {
-        List<Term> terms = HanLP.segment(sentence);
+        int threshold = settings.parallelThreshold;
+        if (threshold > 0 && sentence.length() >= threshold) {
+            return parallelTag(sentence, settings.parallelChunkSize);
+        }
+        return tag(sentence, 0);
+    }
 
-        List<SegWord> results = new ArrayList<SegWord>();
+    /**
+     * 切分文本片段，offset为片段在原始文本中的起始位置
+     */
+    private List<SegWord> tag(String text, int offset) {
+        List<Term> terms = keywordSegment().seg(text);
+
+        List<SegWord> results = new ArrayList<SegWord>(terms.size());
         for (Term term : terms) {
-            results.add(new SegWord(term.word, term.nature.toString()));
+            results.add(NatureFlags.toSegWord(term, offset));
         }
 
         return results;
     }
 
+    /**
+     * 长文本按照句子边界分成若干块，在共享线程池中并行切分，再按照原有顺序合并，
+     * 每个词语的offset仍然是其在原始文本中的位置
+     */
+    private List<SegWord> parallelTag(String text, int chunkSize) {
+        List<int[]> chunks = new ArrayList<>();
+        int chunkStart = 0;
+        while (chunkStart < text.length()) {
+            int chunkEnd = nextChunkEnd(text, chunkStart, chunkSize);
+            chunks.add(new int[]{chunkStart, chunkEnd});
+            chunkStart = chunkEnd;
+        }
+        return tagChunks(text, chunks);
+    }
+
+    /**
+     * 从start开始连续读取若干个句子，直到长度达到chunkSize或者到达文本末尾，返回分块的结束位置
+     */
+    private static int nextChunkEnd(String text, int start, int chunkSize) {
+        int end = start;
+        do {
+            end = Sentences.nextBoundary(text, end);
+        } while (end - start < chunkSize && end < text.length());
+        return end;
+    }
+
+    /**
+     * 并行切分各个分块[start, end)，按照分块的顺序合并结果
+     */
+    private List<SegWord> tagChunks(String text, List<int[]> chunks) {
+        List<Callable<List<SegWord>>> tasks = new ArrayList<>(chunks.size());
+        for (int[] chunk : chunks) {
+            final String part = text.substring(chunk[0], chunk[1]);
+            final int start = chunk[0];
+            tasks.add(() -> tag(part, start));
+        }
+
+        List<SegWord> results = new ArrayList<SegWord>();
+        try {
+            for (Future<List<SegWord>> future : SEGMENT_POOL.invokeAll(tasks)) {
+                results.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("segment interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("segment error.", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * 长度达到并行阈值的文本每次并行切分线程池大小个分块，读完这些分块的词语后再切分后续分块，
+     * 调用者提前停止迭代时最多多切分一批分块；较短的文本逐句切分
+     */
+    @Override
+    public Iterator<SegWord> tagIterator(String text) {
+        int threshold = settings.parallelThreshold;
+        if (threshold > 0 && text.length() >= threshold) {
+            return new ChunkTagIterator(text, settings.parallelChunkSize);
+        }
+        return new SentenceTagIterator(keywordSegment(), text);
+    }
+
     @Override
     public void insertUserDefinedWord(String word, String pos, int freq) {
         //增加新词
@@ -72,23 +185,115 @@ public class HanSegment implements Segment {
     public Entities findEntities(String sentence, boolean allowDuplicated) {
         Entities entities = new Entities(allowDuplicated);
 
-        List<Term> terms = HanLP.segment(sentence);
+        List<Term> terms = entitySegment().seg(sentence);
         for (Term term : terms) {
-            if (term.word.length() < 2) {
-                continue;
-            }
-            if (term.nature.toString().startsWith("nr")) {
-                entities.addPerson(term.word);
-            } else if (term.nature.toString().startsWith("nt")) {
+            addEntity(entities, term);
+        }
+        return entities;
+    }
+
+    /**
+     * 使用实体识别的分词器切分一次，同时得到词性标记结果和实体
+     */
+    @Override
+    public Analysis analyze(String text, boolean allowDuplicated) {
+        Entities entities = new Entities(allowDuplicated);
+
+        List<Term> terms = entitySegment().seg(text);
+        List<SegWord> words = new ArrayList<SegWord>(terms.size());
+        for (Term term : terms) {
+            words.add(NatureFlags.toSegWord(term, 0));
+            addEntity(entities, term);
+        }
+        return new Analysis(words, entities);
+    }
+
+    private static void addEntity(Entities entities, Term term) {
+        if (term.word.length() < 2) {
+            return;
+        }
+        if (term.nature.toString().startsWith("nr")) {
+            entities.addPerson(term.word);
+        } else if (term.nature.toString().startsWith("nt")) {
+            entities.addOrganization(term.word);
+        } else if (term.nature.toString().startsWith("ns")) {
+            if (term.word.endsWith("大学") || term.word.endsWith("学院")) {
                 entities.addOrganization(term.word);
-            } else if (term.nature.toString().startsWith("ns")) {
-                if (term.word.endsWith("大学") || term.word.endsWith("学院")) {
-                    entities.addOrganization(term.word);
-                } else {
-                    entities.addSpace(term.word);
+            } else {
+                entities.addSpace(term.word);
+            }
+        }
+    }
+
+    /**
+     * 按批并行切分的词性标记迭代器，当前一批分块的词语读取完毕后，才会切分下一批分块
+     */
+    private final class ChunkTagIterator implements Iterator<SegWord> {
+        private final String text;
+        private final int chunkSize;
+        private int chunkStart = 0;
+        private Iterator<SegWord> words = Collections.emptyIterator();
+
+        ChunkTagIterator(String text, int chunkSize) {
+            this.text = text;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!words.hasNext() && chunkStart < text.length()) {
+                List<int[]> chunks = new ArrayList<>();
+                while (chunks.size() < SEGMENT_POOL.getParallelism() && chunkStart < text.length()) {
+                    int chunkEnd = nextChunkEnd(text, chunkStart, chunkSize);
+                    chunks.add(new int[]{chunkStart, chunkEnd});
+                    chunkStart = chunkEnd;
                 }
+                words = tagChunks(text, chunks).iterator();
             }
+            return words.hasNext();
+        }
+
+        @Override
+        public SegWord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return words.next();
+        }
+    }
+
+    /**
+     * 逐句切分的词性标记迭代器，只有当前句子的词语读取完毕后，才会切分下一个句子
+     */
+    private static final class SentenceTagIterator implements Iterator<SegWord> {
+        private final com.hankcs.hanlp.seg.Segment segment;
+        private final String text;
+        private int sentenceStart = 0;
+        private int termOffset = 0;
+        private Iterator<Term> terms = Collections.emptyIterator();
+
+        SentenceTagIterator(com.hankcs.hanlp.seg.Segment segment, String text) {
+            this.segment = segment;
+            this.text = text;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!terms.hasNext() && sentenceStart < text.length()) {
+                int sentenceEnd = Sentences.nextBoundary(text, sentenceStart);
+                terms = segment.seg(text.substring(sentenceStart, sentenceEnd)).iterator();
+                termOffset = sentenceStart;
+                sentenceStart = sentenceEnd;
+            }
+            return terms.hasNext();
+        }
+
+        @Override
+        public SegWord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return NatureFlags.toSegWord(terms.next(), termOffset);
         }
-        return entities;
     }
 }
@@ -0,0 +1,125 @@
+package ruc.irm.extractor.nlp.impl;
+
+import com.hankcs.hanlp.HanLP;
+import com.hankcs.hanlp.seg.Segment;
+import org.zhinang.conf.Configuration;
+import ruc.irm.extractor.nlp.Sentences;
+
+import java.util.Objects;
+
+/**
+ * HanLP分词器的配置，从conf-extractor.xml中读取，支持如下参数：
+ * <ul>
+ *     <li>extractor.segment.algorithm: 关键词抽取使用的分词算法，默认为viterbi，可选dat、crf、perceptron等</li>
+ *     <li>extractor.segment.keyword.ner: 关键词抽取时是否识别人名、地名和机构名，默认为false</li>
+ *     <li>extractor.segment.entity.algorithm: 实体识别使用的分词算法，默认为viterbi</li>
+ *     <li>extractor.segment.custom.dictionary: 是否使用自定义词典，默认为true</li>
+ *     <li>extractor.segment.custom.dictionary.forcing: 是否强制优先使用自定义词典，默认为false</li>
+ *     <li>extractor.segment.number.quantifier: 是否合并数词和量词，默认为false</li>
+ *     <li>extractor.segment.pos.tagging: 是否使用词性标注模型消歧，默认为false，即直接取词典中的首个词性，与HanLP.segment一致</li>
+ *     <li>extractor.segment.parallel.threshold: 文本长度(字符数)达到该值时，按句子分块并行切分，默认为20000，小于等于0表示不并行</li>
+ *     <li>extractor.segment.parallel.chunk: 并行切分时每个分块的大致长度，默认为2000</li>
+ * </ul>
+ * 关键词抽取使用速度优先的配置，实体识别(findEntities)使用开启全部命名实体识别的配置。
+ *
+ * @author xiatian
+ */
+final class HanSegmentSettings {
+    private final String algorithm;
+    private final boolean keywordNer;
+    private final String entityAlgorithm;
+    private final boolean customDictionary;
+    private final boolean forceCustomDictionary;
+    private final boolean numberQuantifier;
+    private final boolean posTagging;
+    final int parallelThreshold;
+    final int parallelChunkSize;
+
+    HanSegmentSettings(Configuration conf) {
+        if (conf == null) {
+            conf = new Configuration();
+        }
+        this.algorithm = conf.get("extractor.segment.algorithm", "viterbi");
+        this.keywordNer = conf.getBoolean("extractor.segment.keyword.ner", false);
+        this.entityAlgorithm = conf.get("extractor.segment.entity.algorithm", "viterbi");
+        this.customDictionary = conf.getBoolean("extractor.segment.custom.dictionary", true);
+        this.forceCustomDictionary = conf.getBoolean("extractor.segment.custom.dictionary.forcing", false);
+        this.numberQuantifier = conf.getBoolean("extractor.segment.number.quantifier", false);
+        this.posTagging = conf.getBoolean("extractor.segment.pos.tagging", false);
+        this.parallelThreshold = conf.getInt("extractor.segment.parallel.threshold", 20000);
+        this.parallelChunkSize = Math.max(Sentences.MAX_SENTENCE_LENGTH, conf.getInt("extractor.segment.parallel.chunk", 2000));
+    }
+
+    /**
+     * 关键词抽取使用的分词器：只做分词和词性标注，不进行命名实体识别
+     */
+    Segment newKeywordSegment() {
+        return HanLP.newSegment(algorithm)
+                .enablePartOfSpeechTagging(posTagging)
+                .enableNameRecognize(keywordNer)
+                .enableTranslatedNameRecognize(keywordNer)
+                .enableJapaneseNameRecognize(false)
+                .enablePlaceRecognize(keywordNer)
+                .enableOrganizationRecognize(keywordNer)
+                .enableCustomDictionary(customDictionary)
+                .enableCustomDictionaryForcing(forceCustomDictionary)
+                .enableNumberQuantifierRecognize(numberQuantifier)
+                .enableIndexMode(false)
+                .enableOffset(true)
+                .enableMultithreading(false);
+    }
+
+    /**
+     * 实体识别使用的分词器：开启人名、音译人名、地名和机构名识别
+     */
+    Segment newEntitySegment() {
+        return HanLP.newSegment(entityAlgorithm)
+                .enablePartOfSpeechTagging(posTagging)
+                .enableNameRecognize(true)
+                .enableTranslatedNameRecognize(true)
+                .enablePlaceRecognize(true)
+                .enableOrganizationRecognize(true)
+                .enableCustomDictionary(customDictionary)
+                .enableCustomDictionaryForcing(forceCustomDictionary)
+                .enableNumberQuantifierRecognize(numberQuantifier)
+                .enableOffset(true)
+                .enableMultithreading(false);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HanSegmentSettings)) return false;
+        HanSegmentSettings that = (HanSegmentSettings) o;
+        return keywordNer == that.keywordNer &&
+                customDictionary == that.customDictionary &&
+                forceCustomDictionary == that.forceCustomDictionary &&
+                numberQuantifier == that.numberQuantifier &&
+                posTagging == that.posTagging &&
+                parallelThreshold == that.parallelThreshold &&
+                parallelChunkSize == that.parallelChunkSize &&
+                algorithm.equals(that.algorithm) &&
+                entityAlgorithm.equals(that.entityAlgorithm);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(algorithm, keywordNer, entityAlgorithm, customDictionary, forceCustomDictionary, numberQuantifier, posTagging,
+                parallelThreshold, parallelChunkSize);
+    }
+
+    @Override
+    public String toString() {
+        return "HanSegmentSettings{" +
+                "algorithm='" + algorithm + '\'' +
+                ", keywordNer=" + keywordNer +
+                ", entityAlgorithm='" + entityAlgorithm + '\'' +
+                ", customDictionary=" + customDictionary +
+                ", forceCustomDictionary=" + forceCustomDictionary +
+                ", numberQuantifier=" + numberQuantifier +
+                ", posTagging=" + posTagging +
+                ", parallelThreshold=" + parallelThreshold +
+                ", parallelChunkSize=" + parallelChunkSize +
+                '}';
+    }
+}
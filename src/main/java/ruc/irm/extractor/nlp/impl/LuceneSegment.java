@@ -0,0 +1,235 @@
+package ruc.irm.extractor.nlp.impl;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tartarus.snowball.SnowballProgram;
+import org.tartarus.snowball.ext.EnglishStemmer;
+import org.tartarus.snowball.ext.FinnishStemmer;
+import org.tartarus.snowball.ext.FrenchStemmer;
+import org.tartarus.snowball.ext.GermanStemmer;
+import org.zhinang.conf.Configuration;
+import ruc.irm.extractor.nlp.SegWord;
+import ruc.irm.extractor.nlp.Segment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 基于Lucene分析器的切分实现，用于英语、德语、法语和芬兰语等以空格分词的文本。
+ * <p>
+ * 处理流程为StandardTokenizer切分、按照stoplists下对应语言的停用词表过滤、Snowball词干还原，
+ * 并根据词尾等特征给出近似的词性，以便WordGraph.build选择名词和动词作为候选关键词。
+ * Analyzer内部按照线程复用TokenStream，词干还原程序同样按线程复用。
+ * <p>
+ * 同一段文本中词干相同的词语合并为同一个词语，使用该文本中出现次数最多的小写形式作为该词语的名称
+ * (次数相同时取最短的，长度相同时按字典序)，如computers和computer都输出为出现较多的一种。
+ * 名称只由当前文本决定，与之前处理过的文本无关，相同的输入总是得到相同的结果。
+ *
+ * @author xiatian
+ */
+public class LuceneSegment implements Segment {
+    private static final Logger LOG = LoggerFactory.getLogger(LuceneSegment.class);
+
+    private Configuration configuration = null;
+
+    private final String language;
+
+    private final Analyzer analyzer;
+
+    private final ThreadLocal<SnowballProgram> stemmers;
+
+    /**
+     * @param configuration
+     * @param language      语言代码，目前支持en, de, fr, fi
+     */
+    public LuceneSegment(Configuration configuration, String language) {
+        this.configuration = configuration;
+        this.language = language;
+
+        final CharArraySet stopWords = loadStopWords(language);
+        this.analyzer = new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer source = new StandardTokenizer();
+                TokenStream result = new StopFilter(source, stopWords);
+                return new TokenStreamComponents(source, result);
+            }
+        };
+        this.stemmers = ThreadLocal.withInitial(stemmerOf(language));
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    private static CharArraySet loadStopWords(String language) {
+        try {
+            List<String> words = Resources.readLines(Resources.getResource("stoplists/" + language + ".txt"), Charsets.UTF_8);
+            return new CharArraySet(words, true);
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("no stop words for language {}", language);
+            return CharArraySet.EMPTY_SET;
+        }
+    }
+
+    private static Supplier<SnowballProgram> stemmerOf(String language) {
+        switch (language) {
+            case "en":
+                return EnglishStemmer::new;
+            case "de":
+                return GermanStemmer::new;
+            case "fr":
+                return FrenchStemmer::new;
+            case "fi":
+                return FinnishStemmer::new;
+            default:
+                throw new IllegalArgumentException("unsupported language: " + language);
+        }
+    }
+
+    @Override
+    public void setConfiguration(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    @Override
+    public List<String> segment(String sentence) {
+        List<String> results = new ArrayList<>();
+        for (SegWord word : tag(sentence)) {
+            results.add(word.word);
+        }
+        return results;
+    }
+
+    @Override
+    public List<SegWord> tag(String sentence) {
+        List<SegWord> results = new ArrayList<>();
+        List<String> stems = new ArrayList<>();
+        SnowballProgram stemmer = stemmers.get();
+
+        try (TokenStream stream = analyzer.tokenStream("text", sentence)) {
+            CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+            OffsetAttribute offsetAtt = stream.addAttribute(OffsetAttribute.class);
+            TypeAttribute typeAtt = stream.addAttribute(TypeAttribute.class);
+
+            stream.reset();
+            while (stream.incrementToken()) {
+                String surface = termAtt.toString();
+                String lower = surface.toLowerCase(Locale.ROOT);
+                String pos = guessPos(surface, lower, typeAtt.type());
+
+                String stem = null;
+                if (!"m".equals(pos)) {
+                    stemmer.setCurrent(lower);
+                    stemmer.stem();
+                    stem = stemmer.getCurrent();
+                }
+                stems.add(stem);
+                results.add(new SegWord(lower, pos).setOffset(offsetAtt.startOffset()));
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        //统计每个词干在本段文本中各种形式的出现次数
+        Map<String, Map<String, Integer>> counts = new HashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            String stem = stems.get(i);
+            if (stem != null) {
+                counts.computeIfAbsent(stem, k -> new HashMap<>()).merge(results.get(i).word, 1, Integer::sum);
+            }
+        }
+
+        //同一次切分中，词干相同的词语使用相同的名称
+        Map<String, String> names = new HashMap<>();
+        for (Map.Entry<String, Map<String, Integer>> entry : counts.entrySet()) {
+            names.put(entry.getKey(), chooseSurface(entry.getValue()));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            String stem = stems.get(i);
+            if (stem != null) {
+                results.get(i).word = names.get(stem);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 选择出现次数最多的形式，次数相同时取最短的，长度相同时按字典序
+     */
+    private static String chooseSurface(Map<String, Integer> surfaceCounts) {
+        String best = null;
+        int bestCount = 0;
+        for (Map.Entry<String, Integer> entry : surfaceCounts.entrySet()) {
+            String surface = entry.getKey();
+            int count = entry.getValue();
+            if (best == null || count > bestCount || (count == bestCount && (surface.length() < best.length()
+                    || (surface.length() == best.length() && surface.compareTo(best) < 0)))) {
+                best = surface;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 根据词尾等特征给出近似的词性：m数词，n名词，v动词，a形容词，d副词，x其他
+     */
+    private String guessPos(String surface, String lower, String type) {
+        if ("<NUM>".equals(type) || Character.isDigit(lower.charAt(0))) {
+            return "m";
+        }
+
+        switch (language) {
+            case "en":
+                if (lower.endsWith("ly")) {
+                    return "d";
+                } else if (lower.endsWith("ing") || lower.endsWith("ed") || lower.endsWith("ize") || lower.endsWith("ise")) {
+                    return "v";
+                } else if (lower.endsWith("ous") || lower.endsWith("ful") || lower.endsWith("ive") || lower.endsWith("able")
+                        || lower.endsWith("ible") || lower.endsWith("less") || lower.endsWith("ical")) {
+                    return "a";
+                }
+                return "n";
+            case "de":
+                //德语名词首字母大写
+                return Character.isUpperCase(surface.charAt(0)) ? "n" : "x";
+            default:
+                return "n";
+        }
+    }
+
+    /**
+     * Lucene分析器不使用用户词典，忽略插入的词语
+     */
+    @Override
+    public void insertUserDefinedWord(String word, String pos, int freq) {
+        LOG.debug("user defined word {} ignored by {} analyzer.", word, language);
+    }
+
+    /**
+     * analyzers-common中没有命名实体识别，返回空的实体集合
+     */
+    @Override
+    public Entities findEntities(String sentence, boolean allowDuplicated) {
+        return new Entities(allowDuplicated);
+    }
+}
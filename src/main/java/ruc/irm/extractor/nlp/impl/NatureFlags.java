@@ -0,0 +1,60 @@
+package ruc.irm.extractor.nlp.impl;
+
+import com.hankcs.hanlp.corpus.tag.Nature;
+import com.hankcs.hanlp.seg.common.Term;
+import ruc.irm.extractor.nlp.SegWord;
+
+/**
+ * HanLP词性(Nature)到SegWord词性类别标记位的映射表，按照Nature的序号索引，
+ * 避免每个词语都进行字符串比较。
+ * <p>
+ * HanLP允许在加载自定义词典时动态创建新的词性，遇到超出映射表范围的序号时重新生成映射表。
+ *
+ * @author xiatian
+ */
+final class NatureFlags {
+    private static volatile int[] flags = build();
+
+    private NatureFlags() {
+
+    }
+
+    private static int[] build() {
+        Nature[] natures = Nature.values();
+        int[] table = new int[natures.length];
+        for (Nature nature : natures) {
+            table[nature.ordinal()] = SegWord.flagsOf(nature.toString());
+        }
+        return table;
+    }
+
+    static int of(Nature nature) {
+        if (nature == null) {
+            return SegWord.PUNCTUATION;
+        }
+        int ordinal = nature.ordinal();
+        int[] table = flags;
+        if (ordinal >= table.length) {
+            table = build();
+            flags = table;
+        }
+        return table[ordinal];
+    }
+
+    /**
+     * 把HanLP的切分结果转换为SegWord
+     *
+     * @param term
+     * @param baseOffset term所在文本片段在原始文本中的起始位置
+     * @return
+     */
+    static SegWord toSegWord(Term term, int baseOffset) {
+        SegWord segWord;
+        if (term.nature == null) {
+            segWord = new SegWord(term.word, "null", SegWord.UNKNOWN_POS, SegWord.PUNCTUATION);
+        } else {
+            segWord = new SegWord(term.word, term.nature.toString(), (short) term.nature.ordinal(), of(term.nature));
+        }
+        return segWord.setOffset(baseOffset + term.offset);
+    }
+}
@@ -0,0 +1,40 @@
+package ruc.irm.extractor.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * 内存映射文件(MappedVectorStore、DocumentFrequency等)的读写中共用的字节处理方法
+ *
+ * @author xiatian
+ */
+public final class ByteUtil {
+
+    private ByteUtil() {
+
+    }
+
+    /**
+     * 按照无符号字节比较，UTF-8编码的字符串按此顺序排列后，即可在映射区域上二分查找
+     */
+    public static int compareBytes(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * 以小端序写入一个int，与映射后按ByteOrder.LITTLE_ENDIAN读取的顺序一致
+     */
+    public static void writeIntLE(DataOutputStream out, int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        out.write((v >>> 16) & 0xff);
+        out.write((v >>> 24) & 0xff);
+    }
+}
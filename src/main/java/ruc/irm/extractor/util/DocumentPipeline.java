@@ -0,0 +1,111 @@
+package ruc.irm.extractor.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 并行处理文档集合：在当前线程中读取文档，交给多个工作线程处理，如训练词向量、统计文档频率等。
+ * <p>
+ * 文档迭代器(如RocksDB的迭代器)只在当前线程中访问；队列满时读取线程等待，避免文档堆积占用内存。
+ * 每个工作线程通过workerFactory创建自己的处理函数，以便使用线程内的缓存，不需要同步。
+ *
+ * @author xiatian
+ */
+public final class DocumentPipeline {
+    /**
+     * 线程间传递的结束标记
+     */
+    private static final String END = new String("<END>");
+
+    /**
+     * 调用progress报告进度的时间间隔(毫秒)
+     */
+    private static final long REPORT_INTERVAL = 10000;
+
+    private DocumentPipeline() {
+
+    }
+
+    /**
+     * 使用threads个工作线程处理所有文档，全部处理完成后返回。
+     * 任一工作线程出错时停止读取，并在当前线程中抛出该异常
+     *
+     * @param documents     文档迭代器，空文档被忽略
+     * @param threads       工作线程数量
+     * @param name          工作线程的名称前缀
+     * @param workerFactory 每个工作线程调用一次，创建该线程的处理函数
+     * @param progress      处理过程中定期在当前线程调用，可以为null
+     */
+    public static void process(Iterator<String> documents, int threads, String name,
+                               Supplier<Consumer<String>> workerFactory, Runnable progress) throws IOException {
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(threads * 64);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    Consumer<String> worker = workerFactory.get();
+                    String text;
+                    while ((text = queue.take()) != END) {
+                        if (error.get() == null) {
+                            worker.accept(text);
+                        }
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                    //继续取出文档，避免读取线程在队列满时一直等待
+                    while (true) {
+                        try {
+                            if (queue.take() == END) {
+                                break;
+                            }
+                        } catch (InterruptedException ie) {
+                            break;
+                        }
+                    }
+                }
+            }, name + "-" + t);
+            workers[t].start();
+        }
+
+        try {
+            long lastReport = System.currentTimeMillis();
+            while (documents.hasNext() && error.get() == null) {
+                String text = documents.next();
+                if (text != null && !text.isEmpty()) {
+                    queue.put(text);
+                }
+                if (progress != null && System.currentTimeMillis() - lastReport > REPORT_INTERVAL) {
+                    lastReport = System.currentTimeMillis();
+                    progress.run();
+                }
+            }
+            for (int t = 0; t < threads; t++) {
+                queue.put(END);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(name + " interrupted.");
+        }
+
+        Throwable e = error.get();
+        if (e instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) e).getCause();
+        } else if (e != null) {
+            throw new IOException(name + " failed.", e);
+        }
+    }
+}
@@ -1,7 +1,59 @@
 package ruc.irm.extractor.util;
 
 public class MathUtil {
+    /**
+     * gram方法中分块的行数，两块向量(2 * 64 * 维数 * 4字节)可以同时放入一级或二级缓存
+     */
+    private static final int GRAM_BLOCK = 64;
+
     public static double log2(double v) {
         return Math.log(v)/Math.log(2);
     }
+
+    /**
+     * 计算按行保存的n个d维向量两两之间的内积，即矩阵M * M^T，结果按行保存在长度为n * n的数组中。
+     * 按照GRAM_BLOCK行分块计算，块内的向量在计算过程中保持在缓存中；结果对称，只计算上三角部分
+     *
+     * @param matrix 按行保存的向量，长度为n * d
+     * @param n      向量数量
+     * @param d      向量维数
+     * @return
+     */
+    public static float[] gram(float[] matrix, int n, int d) {
+        float[] result = new float[n * n];
+        for (int i0 = 0; i0 < n; i0 += GRAM_BLOCK) {
+            int i1 = Math.min(i0 + GRAM_BLOCK, n);
+            for (int j0 = i0; j0 < n; j0 += GRAM_BLOCK) {
+                int j1 = Math.min(j0 + GRAM_BLOCK, n);
+                for (int i = i0; i < i1; i++) {
+                    int a = i * d;
+                    for (int j = Math.max(j0, i); j < j1; j++) {
+                        float sum = dot(matrix, a, j * d, d);
+                        result[i * n + j] = sum;
+                        result[j * n + i] = sum;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 同一数组中从a和b开始的两个d维向量的内积
+     */
+    public static float dot(float[] matrix, int a, int b, int d) {
+        //四路累加，减少浮点加法的依赖链
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int k = 0;
+        for (; k + 3 < d; k += 4) {
+            s0 += matrix[a + k] * matrix[b + k];
+            s1 += matrix[a + k + 1] * matrix[b + k + 1];
+            s2 += matrix[a + k + 2] * matrix[b + k + 2];
+            s3 += matrix[a + k + 3] * matrix[b + k + 3];
+        }
+        for (; k < d; k++) {
+            s0 += matrix[a + k] * matrix[b + k];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
 }
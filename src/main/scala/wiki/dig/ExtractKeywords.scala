@@ -0,0 +1,241 @@
+package wiki.dig
+
+import java.io._
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.{Executors, TimeUnit}
+
+import io.circe.Json
+import io.circe.parser.parse
+import io.circe.syntax._
+import javax.xml.stream.{XMLInputFactory, XMLStreamConstants}
+import ruc.irm.extractor.keyword.TextRankExtractor.GraphType
+import ruc.irm.extractor.keyword.{BatchExtractor, KeywordExtractor, TextRankExtractor}
+import wiki.dig.common.BuildInfo
+
+import scala.jdk.CollectionConverters._
+
+/**
+  * 批量抽取关键词的命令行程序：从文件或标准输入逐篇读取文档，在线程池中并行抽取，按照输入顺序输出NDJSON结果。
+  *
+  * cat articles.ndjson | ./bin/extract-keywords > keywords.ndjson
+  * ./bin/extract-keywords -i data/articles.xml -o keywords.ndjson --topN 10 --threads 8
+  *
+  * 输入的每一行为一个JSON对象，包含title、content(或text)字段和可选的id字段，没有id时使用行号；
+  * 文件以.xml结尾或者指定--format xml时，按照data/articles.xml的格式逐篇读取，id为文章的序号。
+  * 输出的每一行对应一篇文档：{"id":..., "keywords":[...], "millis":...}，抽取失败时为{"id":..., "error":...}。
+  *
+  * 同时处理的文档数量不超过inFlight，输出跟不上时不再读取新的文档，整个数据集不会一次读入内存。
+  * 处理进度和速度定期输出到标准错误。结果输出到标准输出时，启动后先保留原来的标准输出专门用于写结果，
+  * 再把System.out重定向到标准错误，控制台日志和加载模型等信息都输出到标准错误，不会混入NDJSON结果。
+  */
+object ExtractKeywords extends App {
+
+  case class Config(
+                     inFile: Option[File] = None,
+                     outFile: Option[File] = None,
+                     format: Option[String] = None,
+                     graphType: GraphType = GraphType.PositionRank,
+                     topN: Int = 10,
+                     phrase: Boolean = false,
+                     threads: Int = Runtime.getRuntime.availableProcessors(),
+                     inFlight: Int = 0,
+                     reportSeconds: Int = 10
+                   )
+
+  val parser = new scopt.OptionParser[Config]("bin/extract-keywords") {
+    head(s"${BuildInfo.name}", s"${BuildInfo.version}")
+
+    opt[String]('i', "inFile").optional().action((x, c) =>
+      c.copy(inFile = Option(new File(x)))).text("input file, read from stdin when not specified.")
+
+    opt[String]('o', "outFile").optional().action((x, c) =>
+      c.copy(outFile = Option(new File(x)))).text("output file, write to stdout when not specified.")
+
+    opt[String]("format").optional()
+      .validate(x => if (x == "ndjson" || x == "xml") success else failure("format must be ndjson or xml"))
+      .action((x, c) => c.copy(format = Some(x))).text("input format: ndjson(default) or xml.")
+
+    opt[String]("graphType").optional()
+      .validate(x => if (GraphType.values().exists(_.name() == x)) success
+      else failure(s"graphType must be one of ${GraphType.values().mkString(", ")}"))
+      .action((x, c) => c.copy(graphType = GraphType.valueOf(x))).text("word graph type, default PositionRank.")
+
+    opt[Int]("topN").action((x, c) => c.copy(topN = x)).text("keywords per document, default 10.")
+
+    opt[Unit]("phrase").action((_, c) => c.copy(phrase = true)).text("merge keywords into phrases.")
+
+    opt[Int]("threads").action((x, c) => c.copy(threads = x)).text("worker threads, default cpu cores.")
+
+    opt[Int]("inFlight").action((x, c) =>
+      c.copy(inFlight = x)).text("max documents in process, default 4 * threads.")
+
+    opt[Int]("reportSeconds").action((x, c) =>
+      c.copy(reportSeconds = x)).text("seconds between throughput reports, default 10.")
+
+    help("help").text("prints this usage text")
+  }
+
+  /**
+    * 读取和输出的计数，用于定期报告处理速度
+    */
+  class Progress {
+    val start: Long = System.currentTimeMillis()
+    val read = new AtomicLong()
+    val chars = new AtomicLong()
+    val written = new AtomicLong()
+    val failed = new AtomicLong()
+    val skipped = new AtomicLong()
+
+    private var lastTime = start
+    private var lastWritten = 0L
+
+    def report(): Unit = synchronized {
+      val now = System.currentTimeMillis()
+      val total = written.get()
+      val seconds = Math.max(1L, now - start) / 1000.0
+      val recent = (total - lastWritten) * 1000.0 / Math.max(1L, now - lastTime)
+      System.err.println(f"read ${read.get()}, written $total, failed ${failed.get()}, skipped ${skipped.get()}; " +
+        f"$recent%.1f docs/s recently, ${total / seconds}%.1f docs/s and ${chars.get() / seconds}%.0f chars/s overall.")
+      lastTime = now
+      lastWritten = total
+    }
+  }
+
+  /**
+    * 逐行读取NDJSON格式的文档，空行忽略，不能解析的行输出警告后跳过
+    */
+  def ndjsonDocuments(reader: BufferedReader, progress: Progress): Iterator[BatchExtractor.Document] =
+    Iterator.continually(reader.readLine()).takeWhile(_ != null).zipWithIndex.flatMap {
+      case (line, _) if line.trim.isEmpty => None
+      case (line, idx) =>
+        parse(line) match {
+          case Right(json) =>
+            val cursor = json.hcursor
+            val id = cursor.downField("id").focus.map(j => j.asString.getOrElse(j.noSpaces))
+              .getOrElse((idx + 1).toString)
+            val title = cursor.get[String]("title").getOrElse("")
+            val content = cursor.get[String]("content").orElse(cursor.get[String]("text")).getOrElse("")
+            Some(new BatchExtractor.Document(id, title, content))
+          case Left(e) =>
+            progress.skipped.incrementAndGet()
+            System.err.println(s"skip line ${idx + 1}: ${e.getMessage}")
+            None
+        }
+    }
+
+  /**
+    * 以流的方式逐篇读取data/articles.xml格式的文档，id为文章的序号，与ArticleDataset一致
+    */
+  def xmlDocuments(in: InputStream): Iterator[BatchExtractor.Document] = new Iterator[BatchExtractor.Document] {
+    private val reader = XMLInputFactory.newInstance().createXMLStreamReader(in, "UTF-8")
+    private var count = 0
+    private var nextDocument: Option[BatchExtractor.Document] = readArticle()
+
+    private def readArticle(): Option[BatchExtractor.Document] = {
+      var fields = Map.empty[String, String]
+      var inArticle = false
+      while (reader.hasNext) {
+        reader.next() match {
+          case XMLStreamConstants.START_ELEMENT if reader.getLocalName == "article" =>
+            inArticle = true
+            fields = Map.empty
+          case XMLStreamConstants.START_ELEMENT if inArticle =>
+            fields += reader.getLocalName -> reader.getElementText
+          case XMLStreamConstants.END_ELEMENT if reader.getLocalName == "article" =>
+            val document = new BatchExtractor.Document(count.toString,
+              fields.getOrElse("title", ""), fields.getOrElse("content", ""))
+            count += 1
+            return Some(document)
+          case _ =>
+        }
+      }
+      reader.close()
+      None
+    }
+
+    override def hasNext: Boolean = nextDocument.nonEmpty
+
+    override def next(): BatchExtractor.Document = {
+      val document = nextDocument.getOrElse(throw new NoSuchElementException())
+      nextDocument = readArticle()
+      document
+    }
+  }
+
+  def toJson(result: BatchExtractor.Result): Json =
+    if (result.isSuccess) {
+      Json.obj(
+        "id" -> result.getId.asJson,
+        "keywords" -> result.getKeywords.asScala.toSeq.asJson,
+        "millis" -> result.getMillis.asJson
+      )
+    } else {
+      Json.obj(
+        "id" -> result.getId.asJson,
+        "error" -> result.getError.toString.asJson
+      )
+    }
+
+  def run(config: Config): Unit = {
+    //在创建抽取程序之前重定向，此后所有写入System.out的内容(包括控制台日志)都转到标准错误
+    val stdout = System.out
+    if (config.outFile.isEmpty) System.setOut(System.err)
+
+    val textRankExtractor = new TextRankExtractor(config.graphType)
+    val extractor: KeywordExtractor = if (config.phrase)
+      (title: String, content: String, n: Int) => textRankExtractor.extractPhraseAsList(title, content, n)
+    else
+      textRankExtractor
+
+    val progress = new Progress
+    val in: InputStream = config.inFile.map(f => new FileInputStream(f)).getOrElse(System.in)
+    val isXml = config.format.map(_ == "xml")
+      .getOrElse(config.inFile.exists(_.getName.toLowerCase.endsWith(".xml")))
+    val documents = (if (isXml) {
+      xmlDocuments(new BufferedInputStream(in, 1 << 16))
+    } else {
+      ndjsonDocuments(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16), progress)
+    }).map { document =>
+      progress.read.incrementAndGet()
+      progress.chars.addAndGet(document.getTitle.length + document.getContent.length)
+      document
+    }
+
+    //输出到标准输出时每行刷新，方便下游程序以流的方式读取
+    val flushEachLine = config.outFile.isEmpty
+    val out = new BufferedWriter(new OutputStreamWriter(
+      config.outFile.map(f => new FileOutputStream(f)).getOrElse(stdout), StandardCharsets.UTF_8), 1 << 16)
+
+    val reporter = Executors.newSingleThreadScheduledExecutor(r => {
+      val thread = new Thread(r, "extract-progress")
+      thread.setDaemon(true)
+      thread
+    })
+    val interval = Math.max(1, config.reportSeconds)
+    reporter.scheduleAtFixedRate(() => progress.report(), interval, interval, TimeUnit.SECONDS)
+
+    val batch = new BatchExtractor(extractor, config.threads, config.inFlight)
+    try {
+      batch.extract(documents.asJava, config.topN).asScala.foreach { result =>
+        out.write(toJson(result).noSpaces)
+        out.write('\n')
+        if (flushEachLine) out.flush()
+        if (!result.isSuccess) progress.failed.incrementAndGet()
+        progress.written.incrementAndGet()
+      }
+    } finally {
+      batch.close()
+      reporter.shutdown()
+      out.flush()
+      if (config.outFile.nonEmpty) out.close()
+      in.close()
+    }
+    progress.report()
+  }
+
+  parser.parse(args, Config()) match {
+    case Some(config) => run(config)
+    case None => System.err.println("Wrong parameters :(")
+  }
+}
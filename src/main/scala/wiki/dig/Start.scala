@@ -2,10 +2,16 @@ package wiki.dig
 
 import java.io.File
 
+import ruc.irm.extractor.algorithm.Word2VecTrainer
+import ruc.irm.extractor.commons.ExtractConf
+import ruc.irm.extractor.keyword.DocumentFrequency
+import ruc.irm.extractor.nlp.SegmentFactory
 import wiki.dig.common.BuildInfo
 import wiki.dig.expt.{EmbeddingDb, ExptDb}
 import wiki.dig.store.db.{CategoryDb, CategoryHierarchyDb, PageContentDb, PageDb}
 
+import scala.jdk.CollectionConverters._
+
 /**
   * Application Start
   *
@@ -21,10 +27,13 @@ object Start extends App {
                      buildPageContentDb: Boolean = false,
                      buildEmbedding: Boolean = false,
                      outPageEmbedding: Boolean = false,
+                     trainWord2Vec: Boolean = false,
+                     buildDocumentFrequency: Boolean = false,
                      sample: Option[Int] = None,
                      startId: Int = 0,
                      batchSize: Int = 1000,
-                     inFile: Option[File] = None
+                     inFile: Option[File] = None,
+                     outFile: Option[File] = None
                    )
 
   val parser = new scopt.OptionParser[Config]("bin/spider") {
@@ -52,9 +61,18 @@ object Start extends App {
     opt[Unit]("outPageEmbedding").action((_, c) =>
       c.copy(outPageEmbedding = true)).text("读取sample.page.ids.txt中的文章，将对应的embedding输出到sample.page.embedding.txt.")
 
+    opt[Unit]("trainWord2Vec").action((_, c) =>
+      c.copy(trainWord2Vec = true)).text("train word2vec model from page content db, saved to outFile(default ./word2vec.bin).")
+
+    opt[Unit]("buildDocumentFrequency").action((_, c) =>
+      c.copy(buildDocumentFrequency = true)).text("count document frequency of page content db, saved to outFile(default ./df.bin).")
+
     opt[String]('i', "inFile").optional().action((x, c) =>
       c.copy(inFile = Option(new File(x)))).text("input file name")
 
+    opt[String]('o', "outFile").optional().action((x, c) =>
+      c.copy(outFile = Option(new File(x)))).text("output file name")
+
     opt[Int]('s', "sample").optional().
       action((x, c) => c.copy(sample = Some(x))).
       text("sample n triangles.")
@@ -117,6 +135,18 @@ object Start extends App {
       if (config.outPageEmbedding) {
         ExptDb.buildArticleEmbedding()
       }
+
+      if (config.trainWord2Vec) {
+        val outFile = config.outFile.getOrElse(new File("./word2vec.bin"))
+        new Word2VecTrainer(ExtractConf.create()).train(PageContentDb.plainTexts().asJava, outFile)
+      }
+
+      if (config.buildDocumentFrequency) {
+        val outFile = config.outFile.getOrElse(new File("./df.bin"))
+        DocumentFrequency.build(PageContentDb.plainTexts().asJava,
+          SegmentFactory.getSegment(ExtractConf.create()),
+          Runtime.getRuntime.availableProcessors(), 2, outFile)
+      }
     case None => {
       println("""Wrong parameters :(""".stripMargin)
     }
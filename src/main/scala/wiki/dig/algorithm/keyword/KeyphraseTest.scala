@@ -1,5 +1,6 @@
 package wiki.dig.algorithm.keyword
 
+import ruc.irm.extractor.keyword.{BatchExtractor, KeywordExtractor}
 import wiki.dig.http.route.PaperRoute.weightedExtractor
 
 import scala.collection.mutable
@@ -52,13 +53,23 @@ object KeyphraseTest {
   def map(topN: Int, findPhrase: Boolean): Double = {
     var totalAP = 0.0
 
-    PaperDataset.papers.zipWithIndex.map {
-      case (paper, idx) =>
-        val keywords1: Seq[String] = if (findPhrase)
-          weightedExtractor.extractPhraseAsList(paper.title, paper.`abstract`, topN).asScala.toSeq
-        else
-          weightedExtractor.extractAsList(paper.title, paper.`abstract`, topN).asScala.toSeq
-
+    val extractor: KeywordExtractor = if (findPhrase)
+      (title: String, content: String, n: Int) => weightedExtractor.extractPhraseAsList(title, content, n)
+    else
+      weightedExtractor
+    val documents = PaperDataset.papers.zipWithIndex.map {
+      case (paper, idx) => new BatchExtractor.Document(idx.toString, paper.title, paper.`abstract`)
+    }
+    val batch = new BatchExtractor(extractor)
+    val results = try batch.extract(documents.asJava, topN).asScala.toSeq finally batch.close()
+
+    PaperDataset.papers.zip(results).foreach {
+      case (paper, result) =>
+        //抽取失败的文档不能按照AP=0计入评测结果，直接抛出异常
+        if (!result.isSuccess) {
+          throw new IllegalStateException(s"第${result.getId}篇论文抽取失败：${paper.title}", result.getError)
+        }
+        val keywords1: Seq[String] = result.getKeywords.asScala.toSeq
         val tags = paper.tags
 
         totalAP += computeAP(keywords1, tags)
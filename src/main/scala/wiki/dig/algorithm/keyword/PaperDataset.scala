@@ -3,7 +3,7 @@ package wiki.dig.algorithm.keyword
 import java.io.FileReader
 
 import breeze.io.CSVReader
-import org.zhinang.conf.Configuration
+import ruc.irm.extractor.commons.ExtractConf
 import ruc.irm.extractor.keyword.graph.PositionWordGraph
 import ruc.irm.extractor.nlp.SegmentFactory
 import wiki.dig.util.DotFile
@@ -114,7 +114,7 @@ object PaperDataset {
     var tagCount = 0;
     var totalTagLength = 0
     var tagWordCount = 0
-    val segment = SegmentFactory.getSegment(new Configuration())
+    val segment = SegmentFactory.getSegment(ExtractConf.create())
 
     case class TagInfo(var totalCount: Int = 0, var totalCharCount: Int = 0)
     val tagInfoMap = mutable.Map.empty[Int, TagInfo]
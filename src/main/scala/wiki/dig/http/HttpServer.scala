@@ -1,6 +1,8 @@
 package wiki.dig.http
 
 import better.files.File
+import ruc.irm.extractor.commons.ExtractConf
+import ruc.irm.extractor.keyword.TextRankExtractor
 import spark.Spark.{port, staticFiles, _}
 import spark.{Request, Response}
 import wiki.dig.MyConf
@@ -18,6 +20,12 @@ object HttpServer extends App with Logging {
 
   println(s"web root: ${File(MyConf.webRoot).canonicalPath}")
 
+  //请求可以通过graphType切换到使用词向量的词图，启动时即在后台加载模型，
+  //不等第一个请求触发加载；通过extractor.word2vec.preload=false关闭
+  if (ExtractConf.create().getBoolean("extractor.word2vec.preload", true)) {
+    TextRankExtractor.preloadModel()
+  }
+
   // 注册路由
   WikiPageRoute.register()
   KeywordRoute.register()
@@ -1,10 +1,15 @@
 package wiki.dig.http.route
 
+import java.util.concurrent.{ExecutionException, TimeUnit, TimeoutException}
+
 import io.circe.syntax._
-import org.zhinang.conf.Configuration
-import ruc.irm.extractor.keyword.TextRankExtractor
+import ruc.irm.extractor.algorithm.ModelRegistry
+import ruc.irm.extractor.commons.ExtractConf
+import ruc.irm.extractor.keyword.{BatchExtractor, DeadlineExtractor, ExtractOptions, KeywordCache, TextRankExtractor}
+import ruc.irm.extractor.keyword.RankAlgorithm.{DivRank, PageRank}
 import ruc.irm.extractor.keyword.TextRankExtractor.GraphType
-import ruc.irm.extractor.keyword.TextRankExtractor.GraphType.{PositionDivRank, PositionRank}
+import ruc.irm.extractor.keyword.TextRankExtractor.GraphType.PositionRank
+import ruc.irm.extractor.keyword.graph.GraphMemoryGuard
 import ruc.irm.extractor.nlp.SegmentFactory
 import spark.Spark._
 import spark.{Request, Response, Route}
@@ -18,9 +23,24 @@ object KeywordRoute extends JsonSupport with Logging {
   //  val ningExtractor: TextRankExtractor = new TextRankExtractor(NingJianfei)
   //  val clusterExtractor: TextRankExtractor = new TextRankExtractor(ClusterRank)
 
-  val weightedDivExtractor: TextRankExtractor = new TextRankExtractor(PositionDivRank)
   //  val clusterDivExtractor: TextRankExtractor = new TextRankExtractor(ClusterDivRank)
 
+  lazy val deadlineExtractor: DeadlineExtractor = new DeadlineExtractor(weightedExtractor)
+
+  /**
+    * 抽取结果缓存，相同文档的并发请求只计算一次
+    */
+  lazy val keywordCache: KeywordCache = new KeywordCache()
+
+  /**
+    * 单次请求可以指定的参数上限，超过时按照上限处理，避免一个请求占用线程过久：
+    * extractor.request.max.words(默认5000)、extractor.request.max.iterations(默认100)、
+    * extractor.request.max.topN(默认100)
+    */
+  lazy val maxRequestWords: Int = ExtractConf.create().getInt("extractor.request.max.words", 5000)
+  lazy val maxRequestIterations: Int = ExtractConf.create().getInt("extractor.request.max.iterations", 100)
+  lazy val maxRequestTopN: Int = ExtractConf.create().getInt("extractor.request.max.topN", 100)
+
   def register(): Unit = {
     //获取账号根据邮箱
     get("/keyword/extract.do", "application/json", extract)
@@ -32,12 +52,30 @@ object KeywordRoute extends JsonSupport with Logging {
     get("/keyword/show_article", "text/html", showArticle)
 
     get("/keyword/failure_list", "text/html", extractFailureList)
+
+    get("/keyword/models", "application/json", modelStatus)
+
+    get("/keyword/memory", "application/json", memoryStats)
   }
 
-  lazy val allResults = ArticleDataset.articles.zipWithIndex.map {
-    case (node, idx) =>
-      val article = ArticleDataset.getArticle(node)
-      val keywords: Seq[String] = weightedExtractor.extractAsList(article.title, article.content, 10).asScala.toSeq
+  lazy val allResults = {
+    val articles = ArticleDataset.articles.map(ArticleDataset.getArticle)
+    val documents = articles.zipWithIndex.map {
+      case (article, idx) => new BatchExtractor.Document(idx.toString, article.title, article.content)
+    }
+    val batch = new BatchExtractor(weightedExtractor)
+    val results = try batch.extract(documents.asJava, 10).asScala.toSeq finally batch.close()
+    articles.zip(results).zipWithIndex
+  }.map {
+    case ((article, result), idx) if !result.isSuccess =>
+      //抽取出错的文章单独标记，不与没有命中标签的文章混在一起
+      LOG.error(s"extract keywords of article $idx failed.", result.getError)
+      s"""
+         |[ERROR] $idx: <a href="/keyword/show_article?id=$idx" target="_blank">${article.title}</a><br/>
+         |error: ${result.getError}<br/>
+         |""".stripMargin
+    case ((article, result), idx) =>
+      val keywords: Seq[String] = result.getKeywords.asScala.toSeq
       val tags = article.tags
 
       //抽取结果中，tags至少包含一个
@@ -71,7 +109,7 @@ object KeywordRoute extends JsonSupport with Logging {
         val article = ArticleDataset.getArticle(id)
 
         //显示文本分词后的结果
-        val words = SegmentFactory.getSegment(new Configuration()).tag(article.content).asScala
+        val words = SegmentFactory.getSegment(ExtractConf.create()).tag(article.content).asScala
 
 
         s"""
@@ -122,8 +160,9 @@ object KeywordRoute extends JsonSupport with Logging {
     Option(request.queryMap("id").value()).flatMap(_.toIntOption) match {
       case Some(id) =>
         val article = ArticleDataset.getArticle(id)
-        val keywords1 = weightedExtractor.extractAsString(article.title, article.content, topN)
-        val keywords2 = weightedDivExtractor.extractAsString(article.title, article.content, topN)
+        val results = weightedExtractor.extractAsMap(article.title, article.content, topN, PageRank, DivRank)
+        val keywords1 = results.get(PageRank).asScala.mkString(" ")
+        val keywords2 = results.get(DivRank).asScala.mkString(" ")
         s"""
            |<html>
            |<head><title>测试[id: ${id}]：${article.title}</title></head>
@@ -143,11 +182,127 @@ object KeywordRoute extends JsonSupport with Logging {
     }
   }
 
+  /**
+    * 词向量模型的加载状态：LOADING, READY, FAILED，加载耗时，以及是否有可用的模型(重新加载失败时仍使用原来的模型)
+    *
+    * @return
+    */
+  private def modelStatus: Route = (_: Request, _: Response) => {
+    val statuses = ModelRegistry.getStatuses.asScala.toSeq.map {
+      status =>
+        Map(
+          "path" -> status.getPath.asJson,
+          "state" -> status.getState.toString.asJson,
+          "loadMillis" -> status.getLoadMillis.asJson,
+          "error" -> Option(status.getError).asJson,
+          "serving" -> status.isServing.asJson
+        ).asJson
+    }
+    jsonOk(statuses)
+  }
+
+  /**
+    * 转移矩阵的内存使用情况：使用稠密矩阵、稀疏矩阵、裁剪和拒绝的请求次数，以及估计分配的内存总量和单次最大值
+    *
+    * @return
+    */
+  private def memoryStats: Route = (_: Request, _: Response) => {
+    val stats = GraphMemoryGuard.getStats.asScala.map {
+      case (name, value) => name -> value.longValue().asJson
+    }.toMap
+    jsonOk(stats.asJson)
+  }
+
+  /**
+    * 从请求参数中读取本次抽取的参数，未指定的参数使用defaults中的值：
+    * graphType, alpha/beta/gamma(需同时指定), lambda, words, iterations, damp, topN, phrase。
+    * words、iterations和topN不超过配置的上限
+    *
+    * @return
+    */
+  def requestOptions(request: Request, defaults: ExtractOptions): ExtractOptions = {
+    def param(name: String): Option[String] = Option(request.queryMap(name).value()).map(_.trim).filter(_.nonEmpty)
+
+    def floatParam(name: String): Option[Float] = param(name).map { x =>
+      x.toFloatOption.getOrElse(throw new IllegalArgumentException(s"参数${name}不是有效的数值：$x"))
+    }
+
+    def intParam(name: String): Option[Int] = param(name).map { x =>
+      x.toIntOption.getOrElse(throw new IllegalArgumentException(s"参数${name}不是有效的整数：$x"))
+    }
+
+    var options = defaults
+    param("graphType").foreach { x =>
+      val graphType = GraphType.values().find(_.name().equalsIgnoreCase(x))
+        .getOrElse(throw new IllegalArgumentException(s"未知的graphType：$x"))
+      options = options.withGraphType(graphType)
+    }
+    (floatParam("alpha"), floatParam("beta"), floatParam("gamma")) match {
+      case (Some(alpha), Some(beta), Some(gamma)) => options = options.withWeights(alpha, beta, gamma)
+      case (None, None, None) =>
+      case _ => throw new IllegalArgumentException("alpha、beta和gamma需要同时指定")
+    }
+    floatParam("lambda").foreach(x => options = options.withLambda(x))
+    intParam("words").foreach(x => options = options.withMaxWords(Math.min(x, maxRequestWords)))
+    intParam("iterations").foreach(x => options = options.withIterations(Math.min(x, maxRequestIterations)))
+    floatParam("damp").foreach(x => options = options.withDampFactor(x))
+    intParam("topN").foreach(x => options = options.withTopN(Math.max(1, Math.min(x, maxRequestTopN))))
+    param("phrase").foreach(x => options = options.withPhrase(x.toBooleanOption.getOrElse(x == "1")))
+    options
+  }
+
   private def extract: Route = (request: Request, _: Response) => {
     val title = Option(request.queryMap("title").value()).getOrElse("").trim
     val content = Option(request.queryMap("content").value()).getOrElse("").trim
 
-    val positionRank = new TextRankExtractor(GraphType.PositionRank).extractAsList(title, content, 10)
-    jsonOk(positionRank.asScala.map(_.asJson).asJson)
+    Option(request.queryMap("budget").value()).flatMap(_.toLongOption) match {
+      case Some(budget) =>
+        //指定了耗时预算(毫秒)时先查缓存，没有缓存时按照剩余时间降级，返回结果中给出实际采用的级别；
+        //超过预算仍未完成时返回按照词频排序的部分结果，后台的计算照常完成，完整计算的结果放入缓存
+        try {
+          val options = requestOptions(request, weightedExtractor.getOptions)
+          Option(keywordCache.getIfPresent(weightedExtractor, title, content, options)) match {
+            case Some(keywords) =>
+              jsonOk(Map(
+                "keywords" -> keywords.asScala.map(_.asJson).asJson,
+                "level" -> DeadlineExtractor.Level.FULL.toString.asJson,
+                "late" -> false.asJson,
+                "millis" -> 0L.asJson,
+                "cached" -> true.asJson
+              ).asJson)
+            case None =>
+              val extraction = deadlineExtractor.submit(title, content, options, budget)
+              extraction.getFuture.thenAccept { (result: DeadlineExtractor.Result) =>
+                if (result.isCacheable) {
+                  keywordCache.put(weightedExtractor, title, content, options, result.getKeywords)
+                }
+              }
+              val result = extraction.await(Math.max(0, budget), TimeUnit.MILLISECONDS)
+              jsonOk(Map(
+                "keywords" -> result.getKeywords.asScala.map(_.asJson).asJson,
+                "level" -> result.getLevel.toString.asJson,
+                "late" -> result.isLate.asJson,
+                "millis" -> result.getMillis.asJson,
+                "cached" -> false.asJson
+              ).asJson)
+          }
+        } catch {
+          case _: TimeoutException =>
+            jsonError(s"抽取超时：${budget}毫秒内未能完成分词和构建词图")
+          case e: ExecutionException => e.getCause match {
+            case cause: IllegalArgumentException => jsonError(cause.getMessage)
+            case cause => throw cause
+          }
+          case e: IllegalArgumentException => jsonError(e.getMessage)
+        }
+      case None =>
+        try {
+          val options = requestOptions(request, weightedExtractor.getOptions)
+          val keywords = keywordCache.extract(weightedExtractor, title, content, options)
+          jsonOk(keywords.asScala.map(_.asJson).asJson)
+        } catch {
+          case e: IllegalArgumentException => jsonError(e.getMessage)
+        }
+    }
   }
 }
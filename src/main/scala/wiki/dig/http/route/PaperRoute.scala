@@ -3,10 +3,10 @@ package wiki.dig.http.route
 import java.io.File
 
 import io.circe.syntax._
-import org.zhinang.conf.Configuration
+import ruc.irm.extractor.commons.ExtractConf
 import ruc.irm.extractor.keyword.TextRankExtractor
-import ruc.irm.extractor.keyword.TextRankExtractor.GraphType
-import ruc.irm.extractor.keyword.TextRankExtractor.GraphType.{PositionDivRank, PositionRank}
+import ruc.irm.extractor.keyword.RankAlgorithm.{DivRank, PageRank}
+import ruc.irm.extractor.keyword.TextRankExtractor.GraphType.PositionRank
 import ruc.irm.extractor.nlp.SegmentFactory
 import spark.Spark._
 import spark.{Request, Response, Route}
@@ -21,7 +21,6 @@ object PaperRoute extends JsonSupport with Logging {
   //  val ningExtractor: TextRankExtractor = new TextRankExtractor(NingJianfei)
   //  val clusterExtractor: TextRankExtractor = new TextRankExtractor(ClusterRank)
 
-  val weightedDivExtractor: TextRankExtractor = new TextRankExtractor(PositionDivRank)
   //  val clusterDivExtractor: TextRankExtractor = new TextRankExtractor(ClusterDivRank)
 
   def register(): Unit = {
@@ -125,8 +124,10 @@ object PaperRoute extends JsonSupport with Logging {
     val detail = PaperDataset.papers.zipWithIndex.map {
       case (paper, idx) =>
         println(s"process $idx/${PaperDataset.count()}...")
-        val keywords1: Seq[String] = weightedExtractor.extractAsList(paper.title, paper.`abstract`, topN).asScala.toSeq
-        val keywords2: Seq[String] = weightedDivExtractor.extractAsList(paper.title, paper.`abstract`, topN).asScala.toSeq
+        //PageRank和DivRank共用一次切分和同一个词图
+        val results = weightedExtractor.extractAsMap(paper.title, paper.`abstract`, topN, PageRank, DivRank)
+        val keywords1: Seq[String] = results.get(PageRank).asScala.toSeq
+        val keywords2: Seq[String] = results.get(DivRank).asScala.toSeq
 
         val tags = paper.tags
 
@@ -213,9 +214,9 @@ object PaperRoute extends JsonSupport with Logging {
         //val keywords2 = weightedDivExtractor.extractAsString(paper.title, paper.`abstract`, topN)
 
         //显示文本分词后的结果
-        val titleWords = SegmentFactory.getSegment(new Configuration()).tag(paper.title).asScala
+        val titleWords = SegmentFactory.getSegment(ExtractConf.create()).tag(paper.title).asScala
 
-        val contentWords = SegmentFactory.getSegment(new Configuration()).tag(paper.`abstract`).asScala
+        val contentWords = SegmentFactory.getSegment(ExtractConf.create()).tag(paper.`abstract`).asScala
 
         if (!new File(s"./www/dot2/${id}.png").exists()) {
           PaperDataset.toDotFile(id.toInt, s"./www/dot2/${id}.png")
@@ -276,8 +277,9 @@ object PaperRoute extends JsonSupport with Logging {
     Option(request.queryMap("id").value()).flatMap(_.toIntOption) match {
       case Some(id) =>
         val paper = PaperDataset.get(id)
-        val keywords1 = weightedExtractor.extractAsString(paper.title, paper.`abstract`, topN)
-        val keywords2 = weightedDivExtractor.extractAsString(paper.title, paper.`abstract`, topN)
+        val results = weightedExtractor.extractAsMap(paper.title, paper.`abstract`, topN, PageRank, DivRank)
+        val keywords1 = results.get(PageRank).asScala.mkString(" ")
+        val keywords2 = results.get(DivRank).asScala.mkString(" ")
         s"""
            |<html>
            |<head><title>测试[id: ${id}]：${paper.title}</title></head>
@@ -301,7 +303,12 @@ object PaperRoute extends JsonSupport with Logging {
     val title = Option(request.queryMap("title").value()).getOrElse("").trim
     val content = Option(request.queryMap("content").value()).getOrElse("").trim
 
-    val positionRank = new TextRankExtractor(GraphType.PositionRank).extractAsList(title, content, 10)
-    jsonOk(positionRank.asScala.map(_.asJson).asJson)
+    try {
+      val options = KeywordRoute.requestOptions(request, weightedExtractor.getOptions)
+      val keywords = weightedExtractor.extract(title, content, options)
+      jsonOk(keywords.asScala.map(_.asJson).asJson)
+    } catch {
+      case e: IllegalArgumentException => jsonError(e.getMessage)
+    }
   }
 }
@@ -16,6 +16,7 @@ import wiki.dig.util.ByteUtil
 
 import scala.concurrent.Await
 import scala.concurrent.duration.Duration
+import scala.util.Try
 
 /**
   * 把Page的内容信息保存到RocksDB数据库中，里面记录的信息包括：
@@ -96,6 +97,32 @@ object PageContentDb extends Db {
     case None => None
   }
 
+  /**
+    * 按照记录ID的顺序遍历所有文章，返回解析后的纯文本，用于训练词向量等需要全部文章的任务。
+    * 迭代器遍历结束后自动释放RocksDB的迭代器
+    */
+  def plainTexts(): Iterator[String] = new Iterator[Option[String]] {
+    private val it = db.newIterator(defaultHandler)
+    it.seekToFirst()
+
+    private var closed = false
+
+    override def hasNext: Boolean = !closed && {
+      val valid = it.isValid
+      if (!valid) {
+        it.close()
+        closed = true
+      }
+      valid
+    }
+
+    override def next(): Option[String] = {
+      val content = new String(GZipUtils.decompress(it.value()), UTF_8)
+      it.next()
+      Try(WikiPage.getPlainText(content)).toOption.flatten
+    }
+  }.flatten
+
   /**
     * 数据库名字
     */